@@ -0,0 +1,94 @@
+package com.pasha.oracleToCsvDataMigration.benchmark;
+
+import com.pasha.oracleToCsvDataMigration.executor.CsvWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fields written by {@link CsvWriter} to a channel which drops the bytes. The score is fields per second
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvWriterBenchmark {
+
+    private static final int NUM_FIELDS = 10_000;
+    private static final int FIELDS_PER_RECORD = 10;
+
+    private final String[] plainFields = new String[NUM_FIELDS];
+    private final String[] quotedFields = new String[NUM_FIELDS];
+    private final String[] cyrillicFields = new String[NUM_FIELDS];
+    private final long[] longs = new long[NUM_FIELDS];
+    private CsvWriter csvWriter;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < NUM_FIELDS; ++i) {
+            plainFields[i] = "Discount for the contract " + random.nextInt(1_000_000);
+            quotedFields[i] = "Customer said \"too expensive\"\nretention offer^" + random.nextInt(1_000_000);
+            // "Discount for the contract" in Russian
+            cyrillicFields[i] = "\u0421\u043a\u0438\u0434\u043a\u0430 \u043f\u043e \u0434\u043e\u0433\u043e\u0432\u043e\u0440\u0443 " + random.nextInt(1_000_000);
+            longs[i] = random.nextLong() >>> random.nextInt(64);
+        }
+        csvWriter = new CsvWriter(new DiscardingChannel());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_FIELDS)
+    public long writePlainFields() {
+        return writeFields(plainFields);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_FIELDS)
+    public long writeQuotedFields() {
+        return writeFields(quotedFields);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_FIELDS)
+    public long writeNonAsciiFields() {
+        return writeFields(cyrillicFields);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_FIELDS)
+    public long writeLongs() {
+        for (int i = 0; i < NUM_FIELDS; ++i) {
+            csvWriter.beginField();
+            csvWriter.appendLong(longs[i]);
+            if ((i + 1) % FIELDS_PER_RECORD == 0) {
+                csvWriter.endRecord();
+            }
+        }
+        csvWriter.flush();
+        return csvWriter.getBytesWritten();
+    }
+
+    private long writeFields(String[] fields) {
+        for (int i = 0; i < NUM_FIELDS; ++i) {
+            csvWriter.writeField(fields[i]);
+            if ((i + 1) % FIELDS_PER_RECORD == 0) {
+                csvWriter.endRecord();
+            }
+        }
+        csvWriter.flush();
+        return csvWriter.getBytesWritten();
+    }
+}
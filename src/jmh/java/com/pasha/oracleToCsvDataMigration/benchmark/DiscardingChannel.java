@@ -0,0 +1,26 @@
+package com.pasha.oracleToCsvDataMigration.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Drops everything written to it, so a benchmark measures the encoding without the disk
+ */
+final class DiscardingChannel implements WritableByteChannel {
+
+    @Override
+    public int write(ByteBuffer src) {
+        final int written = src.remaining();
+        src.position(src.limit());
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
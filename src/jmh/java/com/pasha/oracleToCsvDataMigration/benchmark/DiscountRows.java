@@ -0,0 +1,127 @@
+package com.pasha.oracleToCsvDataMigration.benchmark;
+
+import org.h2.tools.SimpleResultSet;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic rows of the shape of a discounts table: ids, amounts, rates, dates, codes and free text.
+ * About a tenth of the nullable values are null, and a part of the comments has delimiters,
+ * quotes and line breaks, which have to be quoted in csv.
+ * <p>
+ * The same seed gives the same rows, so the runs of a benchmark are comparable
+ */
+final class DiscountRows {
+
+    static final String TABLE_NAME = "DISCOUNTS_BENCH";
+
+    private static final long SEED = 42;
+    private static final long FIRST_SUBS_ID = 1_000_000_000L;
+    private static final long START_MILLIS = Timestamp.valueOf("2018-01-01 00:00:00").getTime();
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final String[] CODES = {"PROMO", "LOYALTY", "FAMILY", "CORPORATE", "STUDENT"};
+    private static final String[] COMMENTS = {
+            "Discount for the whole contract period",
+            "Given by the call center; approved by the supervisor",
+            "Customer said \"too expensive\", retention offer",
+            "Line one of the note\nline two of the note",
+            "Tariff^option^combination",
+    };
+
+    private static final Column[] COLUMNS = {
+            new Column("SUBS_SUBS_ID", Types.NUMERIC, 12, 0, "NUMBER(12)"),
+            new Column("DISC_DISC_ID", Types.NUMERIC, 12, 0, "NUMBER(12)"),
+            new Column("CLNT_CLNT_ID", Types.NUMERIC, 12, 0, "NUMBER(12)"),
+            new Column("TRPL_TRPL_ID", Types.NUMERIC, 6, 0, "NUMBER(6)"),
+            new Column("AMOUNT", Types.NUMERIC, 12, 2, "NUMBER(12, 2)"),
+            new Column("RATE", Types.NUMERIC, 0, -127, "NUMBER"),
+            new Column("START_DATE", Types.TIMESTAMP, 0, 0, "DATE"),
+            new Column("END_DATE", Types.TIMESTAMP, 0, 0, "DATE"),
+            new Column("NAVI_DATE", Types.TIMESTAMP, 0, 0, "TIMESTAMP"),
+            new Column("DISCOUNT_CODE", Types.VARCHAR, 20, 0, "VARCHAR2(20)"),
+            new Column("NAVI_USER", Types.VARCHAR, 30, 0, "VARCHAR2(30)"),
+            new Column("COMMENTS", Types.VARCHAR, 400, 0, "VARCHAR2(400)"),
+    };
+
+    private DiscountRows() {
+    }
+
+    static List<Object[]> generate(int numRows) {
+        Random random = new Random(SEED);
+        List<Object[]> rows = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; ++i) {
+            long startMillis = START_MILLIS + random.nextInt(1000) * DAY_MILLIS;
+            rows.add(new Object[]{
+                    BigDecimal.valueOf(FIRST_SUBS_ID + i),
+                    BigDecimal.valueOf(random.nextInt(1_000_000)),
+                    BigDecimal.valueOf(FIRST_SUBS_ID / 2 + random.nextInt(10_000_000)),
+                    BigDecimal.valueOf(random.nextInt(1000)),
+                    BigDecimal.valueOf(random.nextInt(10_000_000), 2),
+                    nullable(random, BigDecimal.valueOf(random.nextInt(10_000), 4)),
+                    new Timestamp(startMillis),
+                    nullable(random, new Timestamp(startMillis + random.nextInt(365) * DAY_MILLIS)),
+                    new Timestamp(startMillis + random.nextInt((int) DAY_MILLIS)),
+                    CODES[random.nextInt(CODES.length)],
+                    nullable(random, "USER_" + random.nextInt(500)),
+                    nullable(random, COMMENTS[random.nextInt(COMMENTS.length)]),
+            });
+        }
+        return rows;
+    }
+
+    /**
+     * In-memory result set with the metadata Oracle reports for the columns, can be read again after beforeFirst
+     */
+    static SimpleResultSet createResultSet(List<Object[]> rows) {
+        SimpleResultSet resultSet = new SimpleResultSet();
+        for (Column column : COLUMNS) {
+            resultSet.addColumn(column.name, column.type, column.precision, column.scale);
+        }
+        for (Object[] row : rows) {
+            resultSet.addRow(row);
+        }
+        return resultSet;
+    }
+
+    static void createTable(JdbcTemplate jdbcTemplate, List<Object[]> rows) {
+        StringBuilder ddl = new StringBuilder("CREATE TABLE " + TABLE_NAME + " (");
+        StringBuilder parameters = new StringBuilder();
+        for (Column column : COLUMNS) {
+            if (parameters.length() > 0) {
+                ddl.append(", ");
+                parameters.append(", ");
+            }
+            ddl.append(column.name).append(' ').append(column.ddlType);
+            parameters.append('?');
+        }
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE_NAME);
+        jdbcTemplate.execute(ddl.append(')').toString());
+        jdbcTemplate.batchUpdate("INSERT INTO " + TABLE_NAME + " VALUES (" + parameters + ")", rows);
+    }
+
+    private static <T> T nullable(Random random, T value) {
+        return random.nextInt(10) == 0 ? null : value;
+    }
+
+    private static final class Column {
+        private final String name;
+        private final int type;
+        private final int precision;
+        private final int scale;
+        private final String ddlType;
+
+        private Column(String name, int type, int precision, int scale, String ddlType) {
+            this.name = name;
+            this.type = type;
+            this.precision = precision;
+            this.scale = scale;
+            this.ddlType = ddlType;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.pasha.oracleToCsvDataMigration.benchmark;
+
+import com.pasha.oracleToCsvDataMigration.executor.CsvRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.CsvWriter;
+import com.pasha.oracleToCsvDataMigration.executor.IRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import com.pasha.oracleToCsvDataMigration.executor.OutputCompression;
+import com.pasha.oracleToCsvDataMigration.executor.OutputFormat;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import com.pasha.oracleToCsvDataMigration.parquet.ParquetRowSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A table of an embedded H2 database in Oracle mode exported to a file, the way a task exports a slice.
+ * The score is rows per second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExportBenchmark {
+
+    private static final int NUM_ROWS = 100_000;
+    private static final String QUERY = "SELECT * FROM " + DiscountRows.TABLE_NAME;
+
+    @Param({"CSV", "PARQUET"})
+    private OutputFormat outputFormat;
+
+    @Param({"NONE", "GZIP", "ZSTD"})
+    private OutputCompression compression;
+
+    @Param({"0", "2"})
+    private int encoderThreads;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private MigrationParams params;
+    private MigrationMetrics metrics;
+    private Path outputDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:bench;MODE=Oracle;DB_CLOSE_DELAY=-1", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(MigrationParams.Builder.DEFAULT_FETCH_SIZE);
+        DiscountRows.createTable(jdbcTemplate, DiscountRows.generate(NUM_ROWS));
+
+        outputDir = Files.createTempDirectory("export-benchmark");
+        params = MigrationParams.builder()
+                .tableNamePrefix(DiscountRows.TABLE_NAME)
+                .shards("1..1")
+                .partitions("1..1")
+                .outputDir(outputDir + "/")
+                .encoderThreads(encoderThreads)
+                .compression(compression)
+                .outputFormat(outputFormat)
+                .build();
+        metrics = new MigrationMetrics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        dataSource.destroy();
+        try (Stream<Path> files = Files.list(outputDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(outputDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS)
+    public long export() {
+        try (IRowSink rowSink = openRowSink()) {
+            rowSink.export(jdbcTemplate, QUERY);
+            rowSink.checkpoint();
+            return rowSink.getBytesWritten();
+        }
+    }
+
+    private IRowSink openRowSink() {
+        final String fileName = params.getOutputDir() + DiscountRows.TABLE_NAME;
+        if (outputFormat == OutputFormat.PARQUET) {
+            return new ParquetRowSink(fileName + ParquetRowSink.FILE_EXTENSION, compression, metrics);
+        }
+        final CsvWriter csvWriter = CsvWriter.open(
+                fileName + compression.getFileExtension(),
+                0,
+                compression,
+                params.getCompressionThreads(),
+                metrics);
+        return new CsvRowSink(csvWriter, params, metrics);
+    }
+}
@@ -0,0 +1,93 @@
+package com.pasha.oracleToCsvDataMigration.benchmark;
+
+import com.pasha.oracleToCsvDataMigration.executor.CsvLineEncoder;
+import com.pasha.oracleToCsvDataMigration.executor.CsvWriter;
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows of an in-memory result set encoded as csv records, without the database and the disk.
+ * The score is rows per second
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowEncodingBenchmark {
+
+    private static final int NUM_ROWS = 10_000;
+
+    private SimpleResultSet resultSet;
+    private List<Object[]> fetchedRows;
+    private CsvLineEncoder csvLineEncoder;
+    private CsvWriter csvWriter;
+
+    @Setup
+    public void setUp() throws SQLException {
+        resultSet = DiscountRows.createResultSet(DiscountRows.generate(NUM_ROWS));
+        csvLineEncoder = CsvLineEncoder.fromMetaData(resultSet.getMetaData());
+        csvWriter = new CsvWriter(new DiscardingChannel());
+        fetchedRows = new ArrayList<>(NUM_ROWS);
+        while (resultSet.next()) {
+            fetchedRows.add(csvLineEncoder.fetch(resultSet));
+        }
+    }
+
+    /**
+     * The single threaded export: every row is encoded straight from the result set
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS)
+    public long encodeFromResultSet() throws SQLException {
+        resultSet.beforeFirst();
+        while (resultSet.next()) {
+            csvLineEncoder.encode(resultSet, csvWriter);
+        }
+        csvWriter.flush();
+        return csvWriter.getBytesWritten();
+    }
+
+    /**
+     * The fetching thread of the pipeline: values of every row are copied out of the result set
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS)
+    public List<Object[]> fetchRows() throws SQLException {
+        List<Object[]> rows = new ArrayList<>(NUM_ROWS);
+        resultSet.beforeFirst();
+        while (resultSet.next()) {
+            rows.add(csvLineEncoder.fetch(resultSet));
+        }
+        return rows;
+    }
+
+    /**
+     * The encoding threads of the pipeline: fetched rows are encoded as csv records
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUM_ROWS)
+    public long encodeFetchedRows() {
+        for (Object[] row : fetchedRows) {
+            csvLineEncoder.encode(row, csvWriter);
+        }
+        csvWriter.flush();
+        return csvWriter.getBytesWritten();
+    }
+}
@@ -0,0 +1,243 @@
+package com.pasha.oracleToCsvDataMigration.checkpoint;
+
+import com.pasha.oracleToCsvDataMigration.planner.TableChunk;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append only log of planned tasks and their progress, kept in the output directory.
+ * <p>
+ * Every record is one tab separated line which is synced to disk before the method returns,
+ * so after a crash the journal tells which tasks are finished and up to which SUBS_SUBS_ID
+ * and byte offset the unfinished ones have written their files.
+ * <p>
+ * Tables are planned while the tasks of the other tables run. The chunks of a table are followed
+ * by a record which confirms all of them, chunks of a table which was not completely journaled
+ * are discarded on load, so the table is planned again
+ */
+@Slf4j
+public final class CheckpointJournal implements Closeable {
+
+    public static final String FILE_NAME = "migration.journal";
+
+    private static final String TABLE = "TABLE";
+    private static final String CHUNK = "CHUNK";
+    private static final String PLANNED = "PLANNED";
+    private static final String SPLIT = "SPLIT";
+    private static final String PROGRESS = "PROGRESS";
+    private static final String DONE = "DONE";
+    private static final String FIELD_DELIMITER = "\t";
+    private static final String RECORD_DELIMITER = "\n";
+
+    private final FileChannel channel;
+
+    private CheckpointJournal(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Starts a new journal, the previous one is discarded
+     */
+    public static CheckpointJournal create(String outputDir) {
+        try {
+            return new CheckpointJournal(FileChannel.open(getPath(outputDir),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Continues the journal of an interrupted run. An incomplete last record is discarded
+     */
+    public static CheckpointJournal append(String outputDir) {
+        final Path path = getPath(outputDir);
+        try {
+            final byte[] content = Files.exists(path) ? Files.readAllBytes(path) : new byte[0];
+            int length = content.length;
+            while (length > 0 && content[length - 1] != RECORD_DELIMITER.charAt(0)) {
+                --length;
+            }
+            final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(length);
+            channel.position(length);
+            return new CheckpointJournal(channel);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Restores the state of the tasks of the last run
+     *
+     * @return tasks in the order they were planned, empty list if there is no journal
+     */
+    public static List<JournaledTask> load(String outputDir) {
+        final Path path = getPath(outputDir);
+        final Map<Integer, JournaledTask> tasks = new LinkedHashMap<>();
+        final Map<Integer, JournaledTask> unconfirmedChunks = new LinkedHashMap<>();
+        if (!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+        final String[] records;
+        try {
+            records = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).split(RECORD_DELIMITER, -1);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // The last element is the text after the last record delimiter, a record which was not completely written
+        for (int i = 0; i < records.length - 1; ++i) {
+            try {
+                applyRecord(records[i].split(FIELD_DELIMITER), tasks, unconfirmedChunks);
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Corrupted journal record: " + records[i], e);
+            }
+        }
+        if (!records[records.length - 1].isEmpty()) {
+            log.warn("Ignoring incomplete last record of the journal: {}", records[records.length - 1]);
+        }
+        final Set<String> interruptedTableNames = new LinkedHashSet<>();
+        for (JournaledTask chunk : unconfirmedChunks.values()) {
+            interruptedTableNames.add(chunk.getTableName());
+        }
+        for (String tableName : interruptedTableNames) {
+            log.warn("Planning of {} was interrupted, the table is planned again", tableName);
+        }
+        return new ArrayList<>(tasks.values());
+    }
+
+    public void tablePlanned(int taskId, String tableName, long estimatedRowCount) {
+        write(TABLE, taskId, tableName, estimatedRowCount);
+    }
+
+    /**
+     * Chunks of a table, migrated by the tasks from {@code firstTaskId} on. They are written at once
+     * and confirmed by the last record
+     */
+    public void chunksPlanned(int firstTaskId, List<TableChunk> chunks) {
+        final StringBuilder records = new StringBuilder();
+        for (int i = 0; i < chunks.size(); ++i) {
+            final TableChunk chunk = chunks.get(i);
+            appendRecord(records, CHUNK, firstTaskId + i, chunk.getTableName(), chunk.getEstimatedRowCount(),
+                    chunk.getFirstSubsId().toPlainString(), chunk.getLastSubsId().toPlainString());
+        }
+        appendRecord(records, PLANNED, firstTaskId, chunks.size());
+        write(records);
+    }
+
+    /**
+     * The task keeps the range up to the start of {@code newChunk}, the rest goes to a new task.
+     * Both are one record, so a crash can't leave the range lost or owned by two tasks
+     */
+    public void chunkSplit(int taskId, int newTaskId, TableChunk newChunk) {
+        write(SPLIT, taskId, newTaskId, newChunk.getTableName(), newChunk.getEstimatedRowCount(),
+                newChunk.getFirstSubsId().toPlainString(), newChunk.getLastSubsId().toPlainString());
+    }
+
+    /**
+     * The task has exported all rows before {@code nextSubsId}, its file is {@code bytesWritten} long
+     */
+    public void progress(int taskId, BigDecimal nextSubsId, long bytesWritten, long numberOfMigratedRows) {
+        write(PROGRESS, taskId, nextSubsId.toPlainString(), bytesWritten, numberOfMigratedRows);
+    }
+
+    public void taskDone(int taskId, long bytesWritten, long numberOfMigratedRows) {
+        write(DONE, taskId, bytesWritten, numberOfMigratedRows);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void write(String type, Object... fields) {
+        final StringBuilder record = new StringBuilder();
+        appendRecord(record, type, fields);
+        write(record);
+    }
+
+    private synchronized void write(CharSequence records) {
+        final ByteBuffer bytes = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void appendRecord(StringBuilder records, String type, Object... fields) {
+        records.append(type);
+        for (Object field : fields) {
+            records.append(FIELD_DELIMITER).append(field);
+        }
+        records.append(RECORD_DELIMITER);
+    }
+
+    private static void applyRecord(
+            String[] fields,
+            Map<Integer, JournaledTask> tasks,
+            Map<Integer, JournaledTask> unconfirmedChunks) {
+        final int taskId = Integer.parseInt(fields[1]);
+        switch (fields[0]) {
+            case TABLE:
+                tasks.put(taskId, new JournaledTask(taskId, fields[2], Long.parseLong(fields[3])));
+                break;
+            case CHUNK:
+                unconfirmedChunks.put(taskId, newChunk(taskId, fields, 2));
+                break;
+            case PLANNED:
+                final int countChunks = Integer.parseInt(fields[2]);
+                for (int chunkTaskId = taskId; chunkTaskId < taskId + countChunks; ++chunkTaskId) {
+                    tasks.put(chunkTaskId, unconfirmedChunks.remove(chunkTaskId));
+                }
+                break;
+            case SPLIT:
+                JournaledTask newTask = newChunk(Integer.parseInt(fields[2]), fields, 3);
+                tasks.get(taskId).split(newTask.getFirstSubsId());
+                tasks.put(newTask.getTaskId(), newTask);
+                break;
+            case PROGRESS:
+                tasks.get(taskId).progress(new BigDecimal(fields[2]),
+                        Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+                break;
+            case DONE:
+                tasks.get(taskId).done(Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record type: " + fields[0]);
+        }
+    }
+
+    private static JournaledTask newChunk(int taskId, String[] fields, int offset) {
+        final JournaledTask chunk = new JournaledTask(taskId, fields[offset], Long.parseLong(fields[offset + 1]));
+        chunk.planned(new BigDecimal(fields[offset + 2]), new BigDecimal(fields[offset + 3]));
+        return chunk;
+    }
+
+    private static Path getPath(String outputDir) {
+        return Paths.get(outputDir + FILE_NAME);
+    }
+}
@@ -0,0 +1,68 @@
+package com.pasha.oracleToCsvDataMigration.checkpoint;
+
+import com.pasha.oracleToCsvDataMigration.planner.TableChunk;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * State of a task restored from {@link CheckpointJournal}
+ */
+@Getter
+public final class JournaledTask {
+
+    private final int taskId;
+    private final String tableName;
+    private final long estimatedRowCount;
+    /**
+     * Null for a task which migrates the whole table
+     */
+    private BigDecimal firstSubsId;
+    private BigDecimal lastSubsId;
+    /**
+     * Start of the range which was not exported yet
+     */
+    private BigDecimal nextSubsId;
+    private long bytesWritten;
+    private long numberOfMigratedRows;
+    private boolean done;
+
+    JournaledTask(int taskId, String tableName, long estimatedRowCount) {
+        this.taskId = taskId;
+        this.tableName = tableName;
+        this.estimatedRowCount = estimatedRowCount;
+    }
+
+    public boolean isChunk() {
+        return firstSubsId != null;
+    }
+
+    /**
+     * Range of the task as it was at the moment of the last checkpoint, including the splits
+     */
+    public TableChunk toChunk() {
+        return new TableChunk(tableName, firstSubsId, lastSubsId, estimatedRowCount);
+    }
+
+    void planned(BigDecimal firstSubsId, BigDecimal lastSubsId) {
+        this.firstSubsId = firstSubsId;
+        this.lastSubsId = lastSubsId;
+        this.nextSubsId = firstSubsId;
+    }
+
+    void split(BigDecimal lastSubsId) {
+        this.lastSubsId = lastSubsId;
+    }
+
+    void progress(BigDecimal nextSubsId, long bytesWritten, long numberOfMigratedRows) {
+        this.nextSubsId = nextSubsId;
+        this.bytesWritten = bytesWritten;
+        this.numberOfMigratedRows = numberOfMigratedRows;
+    }
+
+    void done(long bytesWritten, long numberOfMigratedRows) {
+        this.bytesWritten = bytesWritten;
+        this.numberOfMigratedRows = numberOfMigratedRows;
+        this.done = true;
+    }
+}
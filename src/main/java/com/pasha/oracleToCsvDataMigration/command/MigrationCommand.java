@@ -2,6 +2,8 @@ package com.pasha.oracleToCsvDataMigration.command;
 
 import com.pasha.oracleToCsvDataMigration.executor.IMigrationExecutor;
 import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import com.pasha.oracleToCsvDataMigration.executor.OutputCompression;
+import com.pasha.oracleToCsvDataMigration.executor.OutputFormat;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.shell.core.CommandMarker;
@@ -32,7 +34,32 @@ public final class MigrationCommand implements CommandMarker {
             @CliOption(key = "numTableChunks", mandatory = false) final Integer numTableChunks,
             @CliOption(key = "minSubsId", mandatory = false) final String minSubsId,
             @CliOption(key = "maxSubsId", mandatory = false) final String maxSubsId,
-            @CliOption(key = "fetchSize", mandatory = false) final Integer fetchSize) {
+            @CliOption(key = "fetchSize", mandatory = false) final Integer fetchSize,
+            @CliOption(key = "encoderThreads", mandatory = false) final Integer encoderThreads,
+            @CliOption(key = "chunkPlanner", mandatory = false) final String chunkPlanner,
+            @CliOption(key = "resume", mandatory = false, specifiedDefaultValue = "true") final Boolean resume,
+            @CliOption(key = "compression", mandatory = false) final String compression,
+            @CliOption(key = "compressionThreads", mandatory = false) final Integer compressionThreads,
+            @CliOption(key = "outputFormat", mandatory = false) final String outputFormat,
+            @CliOption(key = "progressInterval", mandatory = false) final Integer progressInterval,
+            @CliOption(key = "planThreads", mandatory = false) final Integer planThreads,
+            @CliOption(key = "poolSize", mandatory = false) final Integer poolSize,
+            @CliOption(key = "changeColumn", mandatory = false) final String changeColumn,
+            @CliOption(key = "stateFile", mandatory = false) final String stateFile,
+            @CliOption(key = "pageSize", mandatory = false) final Integer pageSize,
+            @CliOption(key = "fanInFiles", mandatory = false) final Integer fanInFiles,
+            @CliOption(key = "maxFileSizeMb", mandatory = false) final Integer maxFileSizeMb,
+            @CliOption(key = "adaptiveConcurrency", mandatory = false) final Boolean adaptiveConcurrency,
+            @CliOption(key = "maxRowsPerSecond", mandatory = false) final Integer maxRowsPerSecond,
+            @CliOption(key = "maxThreadsPerHost", mandatory = false) final Integer maxThreadsPerHost,
+            @CliOption(key = "workerId", mandatory = false) final String workerId,
+            @CliOption(key = "leaseSeconds", mandatory = false) final Integer leaseSeconds,
+            @CliOption(key = "streamTo", mandatory = false) final String streamTo,
+            @CliOption(key = "columns", mandatory = false) final String columns,
+            @CliOption(key = "projectionFile", mandatory = false) final String projectionFile,
+            @CliOption(key = "filter", mandatory = false) final String filter,
+            @CliOption(key = "hints", mandatory = false) final String hints,
+            @CliOption(key = "partition", mandatory = false) final String partition) {
 
         MigrationParams params = MigrationParams
                 .builder()
@@ -45,6 +72,31 @@ public final class MigrationCommand implements CommandMarker {
                 .minSubsId(minSubsId != null ? new BigDecimal(minSubsId) : null)
                 .maxSubsId(maxSubsId != null ? new BigDecimal(maxSubsId) : null)
                 .fetchSize(fetchSize)
+                .encoderThreads(encoderThreads)
+                .chunkPlanner(chunkPlanner)
+                .resume(resume)
+                .compression(compression != null ? OutputCompression.fromName(compression) : null)
+                .compressionThreads(compressionThreads)
+                .outputFormat(outputFormat != null ? OutputFormat.fromName(outputFormat) : null)
+                .progressInterval(progressInterval)
+                .planThreads(planThreads)
+                .poolSize(poolSize)
+                .changeColumn(changeColumn)
+                .stateFile(stateFile)
+                .pageSize(pageSize)
+                .fanInFiles(fanInFiles)
+                .maxFileSizeMb(maxFileSizeMb)
+                .adaptiveConcurrency(adaptiveConcurrency)
+                .maxRowsPerSecond(maxRowsPerSecond)
+                .maxThreadsPerHost(maxThreadsPerHost)
+                .workerId(workerId)
+                .leaseSeconds(leaseSeconds)
+                .streamTo(streamTo)
+                .columns(columns)
+                .projectionFile(projectionFile)
+                .filter(filter)
+                .hints(hints)
+                .partition(partition)
                 .build();
 
         migrationExecutor.execute(params);
@@ -0,0 +1,103 @@
+package com.pasha.oracleToCsvDataMigration.config;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Resizes the connection pools for the threads of a run and opens all their connections
+ * in parallel before the run, so the first tasks don't wait for connections one by one
+ */
+@Slf4j
+@Component
+public final class ConnectionPoolSizer {
+
+    private final ShardRouter shardRouter;
+
+    @Autowired
+    public ConnectionPoolSizer(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Resizes the pools of the hosts of the tables, every host gets {@code poolSize} connections
+     * or as many as its pool is configured for, if that is fewer
+     *
+     * @return the new size of the pool of every host
+     */
+    public Map<ShardRouter.Host, Integer> resize(Collection<String> tableNames, int poolSize) {
+        Map<ShardRouter.Host, Integer> poolSizes = new LinkedHashMap<>();
+        for (ShardRouter.Host host : shardRouter.getHosts(tableNames)) {
+            // The pool can't grow beyond its configured size, which bounds the queue of the connections being opened
+            int maximumPoolSize = host.getMaximumPoolSize();
+            int hostPoolSize = poolSize;
+            if (hostPoolSize > maximumPoolSize) {
+                log.warn("Pool size {} is above pool.maximumPoolSize of {}, using {} connections",
+                        poolSize, host.getName(), maximumPoolSize);
+                hostPoolSize = maximumPoolSize;
+            }
+            HikariConfigMXBean config = host.getDataSource().getHikariConfigMXBean();
+            config.setMaximumPoolSize(hostPoolSize);
+            config.setMinimumIdle(hostPoolSize);
+            log.info("Connection pool {} is resized to {} connections", host.getName(), hostPoolSize);
+            poolSizes.put(host, hostPoolSize);
+        }
+        return poolSizes;
+    }
+
+    /**
+     * Takes as many connections as its pool size from the pool of every host at the same time
+     * and gives them back
+     */
+    public void warmUp(Map<ShardRouter.Host, Integer> poolSizes) {
+        long startTime = System.currentTimeMillis();
+        int numConnections = 0;
+        for (int poolSize : poolSizes.values()) {
+            numConnections += poolSize;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numConnections);
+        List<Future<Connection>> connections = new ArrayList<>();
+        RuntimeException failure = null;
+        try {
+            for (Map.Entry<ShardRouter.Host, Integer> poolSize : poolSizes.entrySet()) {
+                ShardRouter.Host host = poolSize.getKey();
+                for (int i = 0; i < poolSize.getValue(); ++i) {
+                    connections.add(executor.submit(() -> host.getDataSource().getConnection()));
+                }
+            }
+            // Every opened connection is given back, even if some other has failed
+            for (Future<Connection> connection : connections) {
+                try {
+                    connection.get().close();
+                } catch (ExecutionException | SQLException e) {
+                    if (failure == null) {
+                        failure = new RuntimeException(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdown();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        log.info("{} connections to {} hosts are opened in {} ms",
+                connections.size(), poolSizes.size(), System.currentTimeMillis() - startTime);
+    }
+}
@@ -11,11 +11,25 @@ import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.sql.DataSource;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
 @Configuration
 @Import(BaseConfig.class)
 public class DatabaseConfig {
 
+    private static final String DEFAULT_ROW_PREFETCH = "defaultRowPrefetch";
+    private static final String DEFAULT_LOB_PREFETCH_SIZE = "oracle.jdbc.defaultLobPrefetchSize";
+    private static final String IMPLICIT_STATEMENT_CACHE_SIZE = "oracle.jdbc.implicitStatementCacheSize";
+    private static final String POOL_NAME = "migration";
+    private static final String SHARD_URLS_DELIMITER = ";";
+    private static final String SHARDS_AND_URL_DELIMITER = "=";
+    private static final String SHARD_RANGE_DELIMITER_REGEX = "\\.\\.";
+
     @Value("${oracle.url}")
     private String oracleUrl;
 
@@ -25,6 +39,47 @@ public class DatabaseConfig {
     @Value("${oracle.password}")
     private String oraclePassword;
 
+    /**
+     * Shards which live on other instances than {@code oracle.url}, as {@code <shards>=<url>} entries
+     * separated by semicolons. Shards are a range as in the shards param or a single shard, e.g.
+     * {@code 5..8=jdbc:oracle:thin:@//db2:1521/DISC;9=jdbc:oracle:thin:@//db3:1521/DISC}.
+     * The instances are logged in with the credentials of {@code oracle.url}
+     */
+    @Value("${oracle.shardUrls:}")
+    private String shardUrls;
+
+    /**
+     * Rows fetched per round trip by statements without a fetch size, e.g. of the planners
+     */
+    @Value("${oracle.defaultRowPrefetch:1000}")
+    private int defaultRowPrefetch;
+
+    /**
+     * Bytes of a LOB returned with its locator, so short LOBs need no extra round trips
+     */
+    @Value("${oracle.lobPrefetchSize:32768}")
+    private int lobPrefetchSize;
+
+    @Value("${oracle.statementCacheSize:64}")
+    private int statementCacheSize;
+
+    /**
+     * Statement run on every new connection of the pools, e.g.
+     * {@code ALTER SESSION SET "_serial_direct_read" = ALWAYS} for direct path reads of the tables.
+     * Several statements go into an anonymous block, {@code BEGIN EXECUTE IMMEDIATE '...'; ... END;}
+     */
+    @Value("${oracle.sessionInitSql:}")
+    private String sessionInitSql;
+
+    /**
+     * Upper limit of the size of a pool, the pools are resized within it for every run by {@link ConnectionPoolSizer}
+     */
+    @Value("${pool.maximumPoolSize:64}")
+    private int maximumPoolSize;
+
+    @Value("${pool.connectionTimeoutMillis:60000}")
+    private long connectionTimeoutMillis;
+
     @Bean
     public JdbcTemplate jdbcTemplate() throws SQLException {
         return new JdbcTemplate(hikariDataSource());
@@ -37,17 +92,77 @@ public class DatabaseConfig {
 
     @Bean
     public HikariConfig hikariConfig() throws SQLException {
-        HikariConfig hikariConfig = new HikariConfig();
-        hikariConfig.setDataSource(dataSource());
-        return hikariConfig;
+        return newHikariConfig(dataSource(), POOL_NAME);
     }
 
     @Bean
     public DataSource dataSource() throws SQLException {
+        return newOracleDataSource(oracleUrl);
+    }
+
+    /**
+     * A pool per instance of {@code oracle.shardUrls}, shards with the same url share the pool
+     */
+    @Bean
+    public ShardRouter shardRouter() throws SQLException {
+        Map<String, List<Integer>> urlShards = new LinkedHashMap<>();
+        for (String shardsAndUrl : shardUrls.split(SHARD_URLS_DELIMITER)) {
+            if (shardsAndUrl.trim().isEmpty()) {
+                continue;
+            }
+            int delimiterIndex = shardsAndUrl.indexOf(SHARDS_AND_URL_DELIMITER);
+            if (delimiterIndex < 0) {
+                throw new RuntimeException("Wrong oracle.shardUrls format: " + shardsAndUrl);
+            }
+            String[] shardRange = shardsAndUrl.substring(0, delimiterIndex).trim().split(SHARD_RANGE_DELIMITER_REGEX);
+            List<Integer> shards = urlShards.computeIfAbsent(
+                    shardsAndUrl.substring(delimiterIndex + 1).trim(), url -> new ArrayList<>());
+            int lastShard = Integer.parseInt(shardRange[shardRange.length - 1].trim());
+            for (int shard = Integer.parseInt(shardRange[0].trim()); shard <= lastShard; ++shard) {
+                shards.add(shard);
+            }
+        }
+
+        ShardRouter.Host defaultHost = new ShardRouter.Host(hikariDataSource());
+        Map<Integer, ShardRouter.Host> shardHosts = new HashMap<>();
+        int countPools = 0;
+        for (Map.Entry<String, List<Integer>> shardsOfUrl : urlShards.entrySet()) {
+            ShardRouter.Host host = shardsOfUrl.getKey().equals(oracleUrl) ?
+                    defaultHost :
+                    new ShardRouter.Host(new HikariDataSource(newHikariConfig(
+                            newOracleDataSource(shardsOfUrl.getKey()), POOL_NAME + "-" + ++countPools)));
+            for (Integer shard : shardsOfUrl.getValue()) {
+                shardHosts.put(shard, host);
+            }
+        }
+        return new ShardRouter(defaultHost, shardHosts);
+    }
+
+    private HikariConfig newHikariConfig(DataSource dataSource, String poolName) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setDataSource(dataSource);
+        hikariConfig.setPoolName(poolName);
+        hikariConfig.setMaximumPoolSize(maximumPoolSize);
+        hikariConfig.setMinimumIdle(1);
+        hikariConfig.setConnectionTimeout(connectionTimeoutMillis);
+        if (!sessionInitSql.trim().isEmpty()) {
+            hikariConfig.setConnectionInitSql(sessionInitSql);
+        }
+        return hikariConfig;
+    }
+
+    private DataSource newOracleDataSource(String url) throws SQLException {
         OracleDataSource oracleDataSource = new OracleDataSource();
-        oracleDataSource.setURL(oracleUrl);
+        oracleDataSource.setURL(url);
         oracleDataSource.setUser(oracleUsername);
         oracleDataSource.setPassword(oraclePassword);
+
+        Properties connectionProperties = new Properties();
+        connectionProperties.setProperty(DEFAULT_ROW_PREFETCH, String.valueOf(defaultRowPrefetch));
+        connectionProperties.setProperty(DEFAULT_LOB_PREFETCH_SIZE, String.valueOf(lobPrefetchSize));
+        connectionProperties.setProperty(IMPLICIT_STATEMENT_CACHE_SIZE, String.valueOf(statementCacheSize));
+        oracleDataSource.setConnectionProperties(connectionProperties);
+        oracleDataSource.setImplicitCachingEnabled(statementCacheSize > 0);
         return oracleDataSource;
     }
 }
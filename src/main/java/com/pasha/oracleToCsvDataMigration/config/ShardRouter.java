@@ -0,0 +1,143 @@
+package com.pasha.oracleToCsvDataMigration.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Routes the tables of a shard to the Oracle instance the shard lives on.
+ * <p>
+ * Every instance has its own connection pool, so a slow instance does not take the connections
+ * of the others. Shards which are not routed anywhere are read through {@code oracle.url}.
+ * Tables are named {@code <prefix>_<shard>_<partition>}, see {@code MigrationParams}
+ * <p>
+ * Thread safe
+ */
+@Slf4j
+public final class ShardRouter implements Closeable {
+
+    private static final char TABLE_NAME_DELIMITER = '_';
+
+    @Getter
+    private final List<Host> hosts;
+    private final Host defaultHost;
+    /**
+     * Host of every routed shard
+     */
+    private final Map<Integer, Host> shardHosts;
+
+    ShardRouter(Host defaultHost, Map<Integer, Host> shardHosts) {
+        this.defaultHost = defaultHost;
+        this.shardHosts = new TreeMap<>(shardHosts);
+        final Set<Host> hosts = new LinkedHashSet<>();
+        hosts.add(defaultHost);
+        hosts.addAll(shardHosts.values());
+        this.hosts = Collections.unmodifiableList(new ArrayList<>(hosts));
+        final Map<Host, List<Integer>> hostShards = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Host> shardHost : this.shardHosts.entrySet()) {
+            hostShards.computeIfAbsent(shardHost.getValue(), host -> new ArrayList<>()).add(shardHost.getKey());
+        }
+        for (Map.Entry<Host, List<Integer>> shardsOfHost : hostShards.entrySet()) {
+            log.info("Shards {} are read through pool {}", shardsOfHost.getValue(), shardsOfHost.getKey().getName());
+        }
+    }
+
+    /**
+     * All the shards are read through one pool
+     */
+    public static ShardRouter of(HikariDataSource dataSource) {
+        return new ShardRouter(new Host(dataSource), Collections.emptyMap());
+    }
+
+    public Host getHost(String tableName) {
+        final Host host = shardHosts.get(parseShard(tableName));
+        return host == null ? defaultHost : host;
+    }
+
+    /**
+     * Template without a fetch size for the metadata queries of the planners
+     */
+    public JdbcTemplate getJdbcTemplate(String tableName) {
+        return getHost(tableName).getJdbcTemplate();
+    }
+
+    /**
+     * Hosts of the tables, in the order of the first table of each host
+     */
+    public List<Host> getHosts(Collection<String> tableNames) {
+        final Set<Host> tableHosts = new LinkedHashSet<>();
+        for (String tableName : tableNames) {
+            tableHosts.add(getHost(tableName));
+        }
+        return new ArrayList<>(tableHosts);
+    }
+
+    /**
+     * Closes the pools of the routed shards, the pool of {@code oracle.url} is closed by its bean
+     */
+    @Override
+    public void close() {
+        for (Host host : hosts) {
+            if (host != defaultHost) {
+                host.getDataSource().close();
+            }
+        }
+    }
+
+    /**
+     * @return the shard number of the table, -1 if the name has no shard
+     */
+    private static int parseShard(String tableName) {
+        final int partitionIndex = tableName.lastIndexOf(TABLE_NAME_DELIMITER);
+        if (partitionIndex < 0) {
+            return -1;
+        }
+        final int shardIndex = tableName.lastIndexOf(TABLE_NAME_DELIMITER, partitionIndex - 1);
+        if (shardIndex < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(tableName.substring(shardIndex + 1, partitionIndex));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Oracle instance with its connection pool
+     */
+    @Getter
+    public static final class Host {
+        private final String name;
+        private final HikariDataSource dataSource;
+        private final JdbcTemplate jdbcTemplate;
+        /**
+         * Configured size of the pool, it can't grow beyond it when it is resized for a run
+         */
+        private final int maximumPoolSize;
+
+        Host(HikariDataSource dataSource) {
+            this.name = dataSource.getPoolName();
+            this.dataSource = dataSource;
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+            this.maximumPoolSize = dataSource.getMaximumPoolSize();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -1,47 +1,50 @@
 package com.pasha.oracleToCsvDataMigration.executor;
 
-import org.springframework.jdbc.support.rowset.SqlRowSet;
-
-import java.math.BigDecimal;
-import java.sql.Types;
-import java.text.DateFormat;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import com.pasha.oracleToCsvDataMigration.parquet.ParquetRowSink;
 
 public abstract class AbstractMigrationTask {
 
-    private static final String DATE_IN_CSV_PATTERN = "yyyy.MM.dd HH:mm:ss";
-    private static final String DECIMAL_IN_CSV_PATTERN = "";
-
-    protected List<Object> createCsvLine(SqlRowSet sqlRowSet, int columnCount) {
-        List<Object> csvLine = new ArrayList<>();
-        DateFormat dateFormatter = new SimpleDateFormat(DATE_IN_CSV_PATTERN);
-//            DecimalFormatSymbols unusualSymbols = new DecimalFormatSymbols();
-        DecimalFormat numFormatter = new DecimalFormat(DECIMAL_IN_CSV_PATTERN);
-        for (int columnNumber = 1; columnNumber <= columnCount; ++columnNumber) {
-            int type = sqlRowSet.getMetaData().getColumnType(columnNumber);
-            String toWrite;
-            switch (type) {
-                case Types.TIMESTAMP:
-                    Date valueD = sqlRowSet.getDate(columnNumber);
-                    toWrite = (valueD == null ? "" : dateFormatter.format(valueD));
-                    break;
-                case Types.FLOAT:
-                case Types.DOUBLE:
-                case Types.NUMERIC:
-                    BigDecimal valueN = sqlRowSet.getBigDecimal(columnNumber);
-                    toWrite = (valueN == null ? "" : /*numFormatter.format(valueN)*/ valueN.toString());
-                    break;
-                default:
-                    String valueS = sqlRowSet.getString(columnNumber);
-                    toWrite = (valueS == null ? "" : valueS).replace('\n', ' ');
-                    break;
-            }
-            csvLine.add(toWrite);
+    /**
+     * Opens the output file of the task in the format of the run.
+     * A csv file of a resumed task is continued from the last checkpoint
+     *
+     * @param fileName name of the file without the format and compression extensions
+     * @param resumeOffset offset returned by {@link IRowSink#checkpoint()}, 0 to start from scratch
+     */
+    protected IRowSink openRowSink(
+            String fileName,
+            long resumeOffset,
+            MigrationParams params,
+            MigrationMetrics metrics) {
+        final OutputCompression compression = params.getCompression();
+        if (params.getOutputFormat() == OutputFormat.PARQUET) {
+            return new ParquetRowSink(fileName + ParquetRowSink.FILE_EXTENSION, compression, metrics);
         }
-        return csvLine;
+        final CsvWriter csvWriter = CsvWriter.open(
+                fileName + compression.getFileExtension(),
+                resumeOffset,
+                compression,
+                params.getCompressionThreads(),
+                metrics);
+        return new CsvRowSink(csvWriter, params, metrics);
+    }
+
+    /**
+     * Checks that the output file of an interrupted task is still there to be continued.
+     * It is not when the task was committed but the run stopped before the task was journaled as done
+     */
+    protected static boolean canContinue(String fileName, long resumeOffset, MigrationParams params) {
+        return params.getOutputFormat() == OutputFormat.CSV &&
+                OutputFile.canContinue(fileName + params.getCompression().getFileExtension(), resumeOffset);
+    }
+
+    /**
+     * Logs the speed of a finished task
+     */
+    protected static String formatSpeed(long rows, long bytes, long startNanos) {
+        final double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        return String.format("%.1f s, %d rows/s, %.1f MB/s", seconds, Math.round(rows / seconds),
+                bytes / seconds / (1 << 20));
     }
 }
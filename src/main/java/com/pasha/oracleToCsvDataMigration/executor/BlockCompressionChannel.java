@@ -0,0 +1,145 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses the bytes written to it in fixed size blocks, every block by one of
+ * {@code compressionThreads} threads, and writes the compressed blocks to the underlying
+ * channel in the original order. So the writer of a hot table is not limited by the speed
+ * of one compressing thread.
+ * <p>
+ * Not thread safe
+ */
+public final class BlockCompressionChannel implements WritableByteChannel {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    private static final int BLOCKS_IN_FLIGHT_PER_THREAD = 2;
+
+    private final WritableByteChannel channel;
+    private final OutputCompression compression;
+    private final MigrationMetrics metrics;
+    private final ExecutorService compressors;
+    private final int blockSize;
+    private final int maxBlocksInFlight;
+    private final Queue<Future<byte[]>> compressedBlocks = new ArrayDeque<>();
+    private byte[] block;
+    private int blockLength;
+    private boolean open = true;
+
+    public BlockCompressionChannel(
+            WritableByteChannel channel,
+            OutputCompression compression,
+            int compressionThreads,
+            MigrationMetrics metrics) {
+        this(channel, compression, compressionThreads, DEFAULT_BLOCK_SIZE, metrics);
+    }
+
+    public BlockCompressionChannel(
+            WritableByteChannel channel,
+            OutputCompression compression,
+            int compressionThreads,
+            int blockSize,
+            MigrationMetrics metrics) {
+        this.channel = channel;
+        this.compression = compression;
+        this.metrics = metrics;
+        this.compressors = Executors.newFixedThreadPool(compressionThreads);
+        this.blockSize = blockSize;
+        this.maxBlocksInFlight = compressionThreads * BLOCKS_IN_FLIGHT_PER_THREAD;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        final int written = src.remaining();
+        while (src.hasRemaining()) {
+            final int length = Math.min(src.remaining(), blockSize - blockLength);
+            src.get(block, blockLength, length);
+            blockLength += length;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Compresses the incomplete block and writes all the compressed blocks to the underlying channel,
+     * after that the underlying channel ends with a complete member
+     */
+    public void flush() throws IOException {
+        if (blockLength > 0) {
+            submitBlock();
+        }
+        while (!compressedBlocks.isEmpty()) {
+            writeNextBlock();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            flush();
+        } finally {
+            compressors.shutdownNow();
+            channel.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        compressedBlocks.add(compressors.submit(() -> compress(data, length)));
+        block = new byte[blockSize];
+        blockLength = 0;
+        while (compressedBlocks.size() > maxBlocksInFlight) {
+            writeNextBlock();
+        }
+    }
+
+    private byte[] compress(byte[] data, int length) {
+        final long startNanos = System.nanoTime();
+        final byte[] compressed = compression.compress(data, length);
+        metrics.addCompressed(System.nanoTime() - startNanos);
+        return compressed;
+    }
+
+    private void writeNextBlock() throws IOException {
+        final byte[] compressed;
+        try {
+            compressed = compressedBlocks.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        final ByteBuffer bytes = ByteBuffer.wrap(compressed);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Exports a result set in three stages connected by bounded queues:
+ * <ul>
+ * <li>fetch - the calling thread, which owns the result set, copies rows into batches</li>
+ * <li>encode - one or more threads encode batches into csv bytes</li>
+ * <li>write - one thread appends encoded batches to the csv writer in fetch order</li>
+ * </ul>
+ * So database round trips, encoding and disk writes of one table overlap.
+ * <p>
+ * One instance per export
+ */
+public final class CsvExportPipeline {
+
+    private static final int BATCH_SIZE = 1_000;
+    private static final int BATCHES_IN_FLIGHT_PER_ENCODER = 4;
+    private static final int ENCODER_BUFFER_SIZE = 1 << 16;
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private static final RowBatch END_OF_ROWS = new RowBatch(-1, new ArrayList<>());
+    private static final EncodedBatch END_OF_BATCHES = new EncodedBatch(-1, new byte[0]);
+
+    private final int encoderThreads;
+    private final BlockingQueue<RowBatch> fetchedBatches;
+    private final BlockingQueue<EncodedBatch> encodedBatches;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final MigrationMetrics metrics;
+
+    public CsvExportPipeline(int encoderThreads, MigrationMetrics metrics) {
+        this.encoderThreads = encoderThreads;
+        this.metrics = metrics;
+        this.fetchedBatches = new ArrayBlockingQueue<>(encoderThreads * BATCHES_IN_FLIGHT_PER_ENCODER);
+        this.encodedBatches = new ArrayBlockingQueue<>(encoderThreads * BATCHES_IN_FLIGHT_PER_ENCODER);
+    }
+
+    /**
+     * Exports the rows of the result set the cursor moves over. The header has to be written already
+     *
+     * @return number of exported rows
+     */
+    public long export(
+            ResultSet resultSet,
+            IRowCursor rowCursor,
+            CsvLineEncoder csvLineEncoder,
+            CsvWriter csvWriter) throws SQLException {
+        final ExecutorService stages = Executors.newFixedThreadPool(encoderThreads + 1);
+        try {
+            final List<Future<?>> encoders = new ArrayList<>(encoderThreads);
+            for (int i = 0; i < encoderThreads; ++i) {
+                final CsvLineEncoder encoderPlan = csvLineEncoder.copy();
+                encoders.add(stages.submit(() -> runStage(() -> encode(encoderPlan))));
+            }
+            final Future<?> writer = stages.submit(() -> runStage(() -> write(csvWriter)));
+
+            final long countFetchedRows = fetch(resultSet, rowCursor, csvLineEncoder);
+            for (int i = 0; i < encoderThreads; ++i) {
+                put(fetchedBatches, END_OF_ROWS);
+            }
+            for (Future<?> encoder : encoders) {
+                await(encoder);
+            }
+            put(encodedBatches, END_OF_BATCHES);
+            await(writer);
+            return countFetchedRows;
+        } finally {
+            stages.shutdownNow();
+        }
+    }
+
+    private long fetch(ResultSet resultSet, IRowCursor rowCursor, CsvLineEncoder csvLineEncoder) throws SQLException {
+        long countFetchedRows = 0;
+        long sequence = 0;
+        long fetchNanos = 0;
+        long encodeNanos = 0;
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        long startNanos = System.nanoTime();
+        while (rowCursor.next(resultSet)) {
+            final long fetchedNanos = System.nanoTime();
+            fetchNanos += fetchedNanos - startNanos;
+            rows.add(csvLineEncoder.fetch(resultSet));
+            ++countFetchedRows;
+            // Reading values from the result set counts as encoding, as it does in the serial export
+            encodeNanos += System.nanoTime() - fetchedNanos;
+            if (rows.size() == BATCH_SIZE) {
+                metrics.addFetched(BATCH_SIZE, fetchNanos);
+                metrics.addEncoded(encodeNanos);
+                fetchNanos = 0;
+                encodeNanos = 0;
+                put(fetchedBatches, new RowBatch(sequence++, rows));
+                rows = new ArrayList<>(BATCH_SIZE);
+            }
+            startNanos = System.nanoTime();
+        }
+        metrics.addFetched(rows.size(), fetchNanos + System.nanoTime() - startNanos);
+        metrics.addEncoded(encodeNanos);
+        if (!rows.isEmpty()) {
+            put(fetchedBatches, new RowBatch(sequence, rows));
+        }
+        return countFetchedRows;
+    }
+
+    private void encode(CsvLineEncoder csvLineEncoder) {
+        final ByteArrayOutputStream encodedBytes = new ByteArrayOutputStream(ENCODER_BUFFER_SIZE);
+        final CsvWriter batchWriter = new CsvWriter(Channels.newChannel(encodedBytes), ENCODER_BUFFER_SIZE);
+        RowBatch batch;
+        while ((batch = take(fetchedBatches)) != END_OF_ROWS) {
+            final long startNanos = System.nanoTime();
+            for (Object[] row : batch.rows) {
+                csvLineEncoder.encode(row, batchWriter);
+            }
+            batchWriter.flush();
+            metrics.addEncoded(System.nanoTime() - startNanos);
+            put(encodedBatches, new EncodedBatch(batch.sequence, encodedBytes.toByteArray()));
+            encodedBytes.reset();
+        }
+    }
+
+    private void write(CsvWriter csvWriter) {
+        // Encoders finish batches out of order, so early ones wait here for their turn
+        final Map<Long, byte[]> pendingBatches = new HashMap<>();
+        long nextSequence = 0;
+        EncodedBatch batch;
+        while ((batch = take(encodedBatches)) != END_OF_BATCHES) {
+            pendingBatches.put(batch.sequence, batch.bytes);
+            byte[] bytes;
+            while ((bytes = pendingBatches.remove(nextSequence)) != null) {
+                csvWriter.writeEncodedRecords(bytes, 0, bytes.length);
+                ++nextSequence;
+            }
+        }
+    }
+
+    private void runStage(Runnable stage) {
+        try {
+            stage.run();
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+    }
+
+    private <T> void put(BlockingQueue<T> queue, T item) {
+        try {
+            while (!queue.offer(item, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+            metrics.batchQueued();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private <T> T take(BlockingQueue<T> queue) {
+        try {
+            T item;
+            while ((item = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkFailure();
+            }
+            metrics.batchDequeued();
+            return item;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void await(Future<?> stage) {
+        try {
+            stage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops a stage which waits on a queue when another stage has failed
+     */
+    private void checkFailure() {
+        final Throwable stageFailure = failure.get();
+        if (stageFailure != null) {
+            throw new RuntimeException("Export pipeline stage failed", stageFailure);
+        }
+    }
+
+    private static final class RowBatch {
+        private final long sequence;
+        private final List<Object[]> rows;
+
+        private RowBatch(long sequence, List<Object[]> rows) {
+            this.sequence = sequence;
+            this.rows = rows;
+        }
+    }
+
+    private static final class EncodedBatch {
+        private final long sequence;
+        private final byte[] bytes;
+
+        private EncodedBatch(long sequence, byte[] bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+    }
+}
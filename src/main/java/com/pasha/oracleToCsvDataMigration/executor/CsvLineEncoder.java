@@ -0,0 +1,238 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+
+/**
+ * Encoding plan of a csv line. Column types are resolved once from the result set metadata,
+ * after that every row is written without metadata lookups and formatter allocations.
+ * <p>
+ * Not thread safe, every thread has to use its own plan, see {@link #copy()}
+ */
+public final class CsvLineEncoder {
+
+    /**
+     * NUMBER columns of up to that many digits always fit into a long
+     */
+    private static final int MAX_LONG_PRECISION = 18;
+
+    private final String[] columnNames;
+    private final int[] columnTypes;
+    private final int[] precisions;
+    private final int[] scales;
+    private final IColumnEncoder[] columnEncoders;
+
+    private CsvLineEncoder(String[] columnNames, int[] columnTypes, int[] precisions, int[] scales) {
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.precisions = precisions;
+        this.scales = scales;
+        this.columnEncoders = new IColumnEncoder[columnTypes.length];
+        for (int i = 0; i < columnTypes.length; ++i) {
+            columnEncoders[i] = createColumnEncoder(columnTypes[i], precisions[i], scales[i], i + 1);
+        }
+    }
+
+    public static CsvLineEncoder fromMetaData(ResultSetMetaData metaData) throws SQLException {
+        final int columnCount = metaData.getColumnCount();
+        final String[] columnNames = new String[columnCount];
+        final int[] columnTypes = new int[columnCount];
+        final int[] precisions = new int[columnCount];
+        final int[] scales = new int[columnCount];
+        for (int columnNumber = 1; columnNumber <= columnCount; ++columnNumber) {
+            columnNames[columnNumber - 1] = metaData.getColumnName(columnNumber);
+            columnTypes[columnNumber - 1] = metaData.getColumnType(columnNumber);
+            precisions[columnNumber - 1] = metaData.getPrecision(columnNumber);
+            scales[columnNumber - 1] = metaData.getScale(columnNumber);
+        }
+        return new CsvLineEncoder(columnNames, columnTypes, precisions, scales);
+    }
+
+    /**
+     * Creates the same plan with its own encoders, to be used by another thread
+     */
+    public CsvLineEncoder copy() {
+        return new CsvLineEncoder(columnNames, columnTypes, precisions, scales);
+    }
+
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Writes the current row of the result set as a csv record
+     */
+    public void encode(ResultSet resultSet, CsvWriter csvWriter) throws SQLException {
+        for (IColumnEncoder columnEncoder : columnEncoders) {
+            columnEncoder.encode(resultSet, csvWriter);
+        }
+        csvWriter.endRecord();
+    }
+
+    /**
+     * Copies the values of the current row of the result set
+     */
+    public Object[] fetch(ResultSet resultSet) throws SQLException {
+        final Object[] row = new Object[columnEncoders.length];
+        for (int i = 0; i < columnEncoders.length; ++i) {
+            row[i] = columnEncoders[i].fetch(resultSet);
+        }
+        return row;
+    }
+
+    /**
+     * Writes a row previously returned by {@link #fetch(ResultSet)} as a csv record
+     */
+    public void encode(Object[] row, CsvWriter csvWriter) {
+        for (int i = 0; i < columnEncoders.length; ++i) {
+            columnEncoders[i].encode(row[i], csvWriter);
+        }
+        csvWriter.endRecord();
+    }
+
+    private static IColumnEncoder createColumnEncoder(int type, int precision, int scale, int columnNumber) {
+        switch (type) {
+            case Types.TIMESTAMP:
+                return new TimestampColumnEncoder(columnNumber);
+            case Types.NUMERIC:
+                // Oracle reports NUMBER without precision as precision 0 and scale -127
+                if (precision > 0 && precision <= MAX_LONG_PRECISION && scale == 0) {
+                    return new LongColumnEncoder(columnNumber);
+                }
+                return new NumericColumnEncoder(columnNumber);
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new NumericColumnEncoder(columnNumber);
+            default:
+                return new StringColumnEncoder(columnNumber);
+        }
+    }
+
+    /**
+     * Writes timestamps in "yyyy.MM.dd HH:mm:ss" format of the default time zone
+     */
+    private static final class TimestampColumnEncoder implements IColumnEncoder {
+        private final int columnNumber;
+        private final Calendar calendar = Calendar.getInstance();
+
+        private TimestampColumnEncoder(int columnNumber) {
+            this.columnNumber = columnNumber;
+        }
+
+        @Override
+        public Object fetch(ResultSet resultSet) throws SQLException {
+            // getTimestamp keeps the time part, as the disconnected row set did
+            return resultSet.getTimestamp(columnNumber);
+        }
+
+        @Override
+        public void encode(Object value, CsvWriter csvWriter) {
+            if (value == null) {
+                csvWriter.writeEmptyField();
+                return;
+            }
+            calendar.setTime((Timestamp) value);
+            csvWriter.beginField();
+            csvWriter.appendDigits(calendar.get(Calendar.YEAR), 4);
+            csvWriter.appendAscii('.');
+            csvWriter.appendDigits(calendar.get(Calendar.MONTH) + 1, 2);
+            csvWriter.appendAscii('.');
+            csvWriter.appendDigits(calendar.get(Calendar.DAY_OF_MONTH), 2);
+            csvWriter.appendAscii(' ');
+            csvWriter.appendDigits(calendar.get(Calendar.HOUR_OF_DAY), 2);
+            csvWriter.appendAscii(':');
+            csvWriter.appendDigits(calendar.get(Calendar.MINUTE), 2);
+            csvWriter.appendAscii(':');
+            csvWriter.appendDigits(calendar.get(Calendar.SECOND), 2);
+        }
+    }
+
+    /**
+     * Integral NUMBER columns, read as long and written without allocations
+     */
+    private static final class LongColumnEncoder implements IColumnEncoder {
+        private final int columnNumber;
+
+        private LongColumnEncoder(int columnNumber) {
+            this.columnNumber = columnNumber;
+        }
+
+        @Override
+        public Object fetch(ResultSet resultSet) throws SQLException {
+            final long value = resultSet.getLong(columnNumber);
+            return resultSet.wasNull() ? null : value;
+        }
+
+        @Override
+        public void encode(Object value, CsvWriter csvWriter) {
+            if (value == null) {
+                csvWriter.writeEmptyField();
+            } else {
+                csvWriter.beginField();
+                csvWriter.appendLong((Long) value);
+            }
+        }
+
+        @Override
+        public void encode(ResultSet resultSet, CsvWriter csvWriter) throws SQLException {
+            final long value = resultSet.getLong(columnNumber);
+            if (resultSet.wasNull()) {
+                csvWriter.writeEmptyField();
+            } else {
+                csvWriter.beginField();
+                csvWriter.appendLong(value);
+            }
+        }
+    }
+
+    /**
+     * Fractional and unconstrained NUMBER, FLOAT and DOUBLE columns
+     */
+    private static final class NumericColumnEncoder implements IColumnEncoder {
+        private final int columnNumber;
+
+        private NumericColumnEncoder(int columnNumber) {
+            this.columnNumber = columnNumber;
+        }
+
+        @Override
+        public Object fetch(ResultSet resultSet) throws SQLException {
+            return resultSet.getBigDecimal(columnNumber);
+        }
+
+        @Override
+        public void encode(Object value, CsvWriter csvWriter) {
+            if (value == null) {
+                csvWriter.writeEmptyField();
+            } else {
+                csvWriter.writeAsciiField(value.toString());
+            }
+        }
+    }
+
+    private static final class StringColumnEncoder implements IColumnEncoder {
+        private final int columnNumber;
+
+        private StringColumnEncoder(int columnNumber) {
+            this.columnNumber = columnNumber;
+        }
+
+        @Override
+        public Object fetch(ResultSet resultSet) throws SQLException {
+            return resultSet.getString(columnNumber);
+        }
+
+        @Override
+        public void encode(Object value, CsvWriter csvWriter) {
+            if (value == null) {
+                csvWriter.writeEmptyField();
+            } else {
+                csvWriter.writeField(((String) value).replace('\n', ' '));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes rows as csv. With {@code encoderThreads} specified the rows go through {@link CsvExportPipeline}.
+ * <p>
+ * The header is taken from the first result set and written only to an empty file
+ */
+public final class CsvRowSink implements IRowSink {
+
+    /**
+     * Time and rows are added to the metrics that often
+     */
+    private static final int ROWS_PER_METRICS_UPDATE = 1 << 10;
+
+    private final CsvWriter csvWriter;
+    private final int encoderThreads;
+    private final MigrationMetrics metrics;
+    private CsvLineEncoder csvLineEncoder;
+
+    public CsvRowSink(CsvWriter csvWriter, MigrationParams params, MigrationMetrics metrics) {
+        this.csvWriter = csvWriter;
+        this.encoderThreads = params.getEncoderThreads();
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long writeRows(ResultSet resultSet, IRowCursor rowCursor) throws SQLException {
+        if (csvLineEncoder == null) {
+            csvLineEncoder = CsvLineEncoder.fromMetaData(resultSet.getMetaData());
+            if (csvWriter.getBytesWritten() == 0) {
+                csvWriter.writeHeader(csvLineEncoder.getColumnNames());
+            }
+        }
+        if (encoderThreads > 0) {
+            return new CsvExportPipeline(encoderThreads, metrics)
+                    .export(resultSet, rowCursor, csvLineEncoder, csvWriter);
+        }
+        long countWrittenRows = 0;
+        long fetchNanos = 0;
+        long encodeNanos = 0;
+        long startNanos = System.nanoTime();
+        while (rowCursor.next(resultSet)) {
+            final long fetchedNanos = System.nanoTime();
+            fetchNanos += fetchedNanos - startNanos;
+            csvLineEncoder.encode(resultSet, csvWriter);
+            startNanos = System.nanoTime();
+            encodeNanos += startNanos - fetchedNanos;
+            if (++countWrittenRows % ROWS_PER_METRICS_UPDATE == 0) {
+                metrics.addFetched(ROWS_PER_METRICS_UPDATE, fetchNanos);
+                metrics.addEncoded(encodeNanos);
+                fetchNanos = 0;
+                encodeNanos = 0;
+            }
+        }
+        metrics.addFetched(countWrittenRows % ROWS_PER_METRICS_UPDATE, fetchNanos + System.nanoTime() - startNanos);
+        metrics.addEncoded(encodeNanos);
+        return countWrittenRows;
+    }
+
+    @Override
+    public long checkpoint() {
+        return csvWriter.sync();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return csvWriter.getFileBytesWritten();
+    }
+
+    @Override
+    public void commit(long rowCount) {
+        csvWriter.commit(rowCount);
+    }
+
+    @Override
+    public void close() {
+        csvWriter.close();
+    }
+}
@@ -1,50 +1,405 @@
 package com.pasha.oracleToCsvDataMigration.executor;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
-import org.springframework.stereotype.Component;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
 
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
-public class CsvWriter {
-    private CSVPrinter csvPrinter;
-    private BufferedWriter writer;
+/**
+ * Writes '^' delimited csv encoded in UTF-8. The output is the same as the one of
+ * {@code CSVFormat.DEFAULT.withDelimiter('^')} from commons-csv: minimal quoting, CRLF record separator.
+ * <p>
+ * Fields are encoded straight into a reusable direct buffer which is written to the channel
+ * when it is full, so no intermediate strings, char arrays or encoders are allocated per field.
+ * <p>
+ * Not thread safe
+ */
+public class CsvWriter implements Closeable {
 
-    public CsvWriter(String path) {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private static final byte DELIMITER = '^';
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte REPLACEMENT = '?';
+    private static final char COMMENT = '#';
+    private static final char SP = ' ';
+
+    /**
+     * Maximum number of bytes one char can take: 3 bytes of UTF-8 doubled by quote escaping
+     */
+    private static final int MAX_BYTES_PER_CHAR = 6;
+
+    private final WritableByteChannel channel;
+    /**
+     * The output file, null when the writer does not write to a file
+     */
+    private final OutputFile outputFile;
+    /**
+     * Counts the bytes written to the file, null when the writer does not write to a file
+     */
+    private final MeteredChannel meteredChannel;
+    private final ByteBuffer buffer;
+    private boolean newRecord = true;
+    /**
+     * Number of bytes passed to the channel, including the size of the file continued by the writer
+     */
+    private long drainedBytes;
+
+    public CsvWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvWriter(WritableByteChannel channel, int bufferSize) {
+        this(channel, null, null, bufferSize);
+    }
+
+    private CsvWriter(
+            WritableByteChannel channel,
+            OutputFile outputFile,
+            MeteredChannel meteredChannel,
+            int bufferSize) {
+        this.channel = channel;
+        this.outputFile = outputFile;
+        this.meteredChannel = meteredChannel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Opens a file, compressing it with {@code compressionThreads} threads unless the compression is NONE.
+     * The file is written under a temporary name until {@link #commit(long)}, see {@link OutputFile}.
+     * A file written by another writer is continued from {@code offset} and everything after it is discarded,
+     * so the offset has to be a value returned by {@link #sync()}
+     *
+     * @param offset 0 to start a new file
+     */
+    public static CsvWriter open(
+            String path,
+            long offset,
+            OutputCompression compression,
+            int compressionThreads,
+            MigrationMetrics metrics) {
+        final OutputFile outputFile = OutputFile.open(path, offset);
+        final MeteredChannel meteredChannel = new MeteredChannel(outputFile, metrics);
+        final WritableByteChannel channel = compression == OutputCompression.NONE ?
+                meteredChannel :
+                new BlockCompressionChannel(meteredChannel, compression, compressionThreads, metrics);
+        final CsvWriter csvWriter = new CsvWriter(channel, outputFile, meteredChannel, DEFAULT_BUFFER_SIZE);
+        csvWriter.drainedBytes = offset;
+        return csvWriter;
+    }
+
+    public void writeHeader(String[] header) {
+        for (String columnName : header) {
+            writeField(columnName);
+        }
+        endRecord();
+    }
+
+    /**
+     * Writes a text field, quoting it when needed
+     */
+    public void writeField(CharSequence value) {
+        final int length = value.length();
+        if (length == 0) {
+            writeEmptyField();
+            return;
+        }
+        final boolean quote = needsQuoting(value, length, newRecord);
+        beginField();
+        if (buffer.remaining() < length * MAX_BYTES_PER_CHAR + 2) {
+            drain();
+        }
+        if (quote) {
+            buffer.put(QUOTE);
+        }
+        if (buffer.remaining() >= length * MAX_BYTES_PER_CHAR + 1) {
+            encodeChars(value, 0, length, quote);
+        } else {
+            // Value is larger than the buffer, encoding it piece by piece
+            final int charsPerPiece = (buffer.capacity() - 2) / MAX_BYTES_PER_CHAR;
+            int start = 0;
+            while (start < length) {
+                int end = Math.min(length, start + charsPerPiece);
+                if (end < length && Character.isHighSurrogate(value.charAt(end - 1))) {
+                    --end;
+                }
+                if (buffer.remaining() < (end - start) * MAX_BYTES_PER_CHAR + 1) {
+                    drain();
+                }
+                encodeChars(value, start, end, quote);
+                start = end;
+            }
+        }
+        if (quote) {
+            ensureRemaining(1);
+            buffer.put(QUOTE);
+        }
+    }
+
+    /**
+     * Writes a field which is known to consist of printable ASCII chars
+     * and never requires quoting, e.g. a formatted number
+     */
+    public void writeAsciiField(CharSequence value) {
+        final int length = value.length();
+        if (length == 0) {
+            writeEmptyField();
+            return;
+        }
+        beginField();
+        ensureRemaining(length);
+        for (int i = 0; i < length; ++i) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    /**
+     * Writes a field for an absent value
+     */
+    public void writeEmptyField() {
+        if (newRecord) {
+            // An empty first field is quoted, otherwise a record of one field would be an empty line
+            ensureRemaining(2);
+            buffer.put(QUOTE).put(QUOTE);
+            newRecord = false;
+        } else {
+            ensureRemaining(1);
+            buffer.put(DELIMITER);
+        }
+    }
+
+    /**
+     * Starts a field which is then written with the {@code append} methods.
+     * The appended content must not require quoting
+     */
+    public void beginField() {
+        if (newRecord) {
+            newRecord = false;
+        } else {
+            ensureRemaining(1);
+            buffer.put(DELIMITER);
+        }
+    }
+
+    public void appendAscii(char c) {
+        ensureRemaining(1);
+        buffer.put((byte) c);
+    }
+
+    /**
+     * Appends a non negative number padded with zeros up to {@code minDigits}
+     */
+    public void appendDigits(int value, int minDigits) {
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            ++digits;
+        }
+        final int width = Math.max(digits, minDigits);
+        ensureRemaining(width);
+        final int start = buffer.position();
+        int rest = value;
+        for (int i = width - 1; i >= 0; --i) {
+            buffer.put(start + i, (byte) ('0' + rest % 10));
+            rest /= 10;
+        }
+        buffer.position(start + width);
+    }
+
+    /**
+     * Appends a number in the format of {@link Long#toString(long)}
+     */
+    public void appendLong(long value) {
+        // Digits are taken from the negated value, which also works for Long.MIN_VALUE
+        long negative = value < 0 ? value : -value;
+        int digits = 1;
+        for (long rest = negative / 10; rest != 0; rest /= 10) {
+            ++digits;
+        }
+        final int width = value < 0 ? digits + 1 : digits;
+        ensureRemaining(width);
+        final int start = buffer.position();
+        if (value < 0) {
+            buffer.put(start, (byte) '-');
+        }
+        for (int i = width - 1; i >= width - digits; --i) {
+            buffer.put(start + i, (byte) ('0' - negative % 10));
+            negative /= 10;
+        }
+        buffer.position(start + width);
+    }
+
+    public void endRecord() {
+        ensureRemaining(2);
+        buffer.put(CR).put(LF);
+        newRecord = true;
+    }
+
+    /**
+     * Appends complete records which were encoded by another writer
+     */
+    public void writeEncodedRecords(byte[] records, int offset, int length) {
+        if (length <= buffer.remaining()) {
+            buffer.put(records, offset, length);
+            return;
+        }
+        drain();
+        if (length <= buffer.remaining()) {
+            buffer.put(records, offset, length);
+            return;
+        }
+        write(ByteBuffer.wrap(records, offset, length));
+        drainedBytes += length;
+    }
+
+    public void flush() {
+        drain();
+    }
+
+    /**
+     * Discards the buffered bytes and starts a new document on the same channel, so the buffer is reused.
+     * {@link #getBytesWritten()} counts from zero again
+     */
+    public void reset() {
+        buffer.clear();
+        drainedBytes = 0;
+        newRecord = true;
+    }
+
+    /**
+     * Writes everything written so far to the channel and, for a file, forces it to disk
+     *
+     * @return size of the output, the offset a file can be continued from
+     */
+    public long sync() {
+        drain();
         try {
-            writer = Files.newBufferedWriter(Paths.get(path));
+            if (channel instanceof BlockCompressionChannel) {
+                ((BlockCompressionChannel) channel).flush();
+            }
+            if (outputFile == null) {
+                return drainedBytes;
+            }
+            return outputFile.force();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void writeHeader(String[] header) {
+    /**
+     * Closes the file and gives it its final name, to be called when all the records are written
+     *
+     * @param rowCount number of records in the file, excluding the header
+     */
+    public void commit(long rowCount) {
+        close();
+        outputFile.commit(rowCount);
+    }
+
+    /**
+     * Number of bytes written, including the buffered ones. Before compression, if any
+     */
+    public long getBytesWritten() {
+        return drainedBytes + buffer.position();
+    }
+
+    /**
+     * Number of bytes written to the file by this writer, after compression
+     */
+    public long getFileBytesWritten() {
+        return meteredChannel == null ? 0 : meteredChannel.getBytesWritten();
+    }
+
+    @Override
+    public void close() {
         try {
-            csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withDelimiter('^')
-                    .withHeader(header));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            drain();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static boolean needsQuoting(CharSequence value, int length, boolean firstField) {
+        char c = value.charAt(0);
+        // RFC4180 TEXTDATA = %x20-21 / %x23-2B / %x2D-7E
+        if (firstField && (c < 0x20 || c > 0x21 && c < 0x23 || c > 0x2B && c < 0x2D || c > 0x7E)) {
+            return true;
+        }
+        if (c <= COMMENT) {
+            return true;
+        }
+        for (int i = 0; i < length; ++i) {
+            c = value.charAt(i);
+            if (c == LF || c == CR || c == QUOTE || c == DELIMITER) {
+                return true;
+            }
+        }
+        return value.charAt(length - 1) <= SP;
+    }
+
+    private void encodeChars(CharSequence value, int start, int end, boolean quote) {
+        for (int i = start; i < end; ++i) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                if (quote && c == QUOTE) {
+                    buffer.put(QUOTE);
+                }
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else {
+                    buffer.put(REPLACEMENT);
+                }
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            drain();
         }
     }
 
-    public void writeRecord(List<Object> columns) {
+    private void drain() {
+        final int position = buffer.position();
+        if (position == 0) {
+            return;
+        }
+        buffer.flip();
         try {
-            csvPrinter.printRecord(columns);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            write(buffer);
+        } finally {
+            buffer.clear();
         }
+        drainedBytes += position;
     }
 
-    public void flush() {
+    private void write(ByteBuffer bytes) {
         try {
-            csvPrinter.flush();
-            writer.flush();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new RuntimeException(e);
         }
     }
 }
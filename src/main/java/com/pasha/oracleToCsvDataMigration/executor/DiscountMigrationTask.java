@@ -1,81 +1,362 @@
 package com.pasha.oracleToCsvDataMigration.executor;
 
+import com.pasha.oracleToCsvDataMigration.checkpoint.CheckpointJournal;
+import com.pasha.oracleToCsvDataMigration.checkpoint.JournaledTask;
+import com.pasha.oracleToCsvDataMigration.incremental.DeltaExport;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import com.pasha.oracleToCsvDataMigration.planner.TableChunk;
+import com.pasha.oracleToCsvDataMigration.throttle.QueryThrottle;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 
 import java.math.BigDecimal;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
+import java.math.RoundingMode;
 
+/**
+ * Migrates a SUBS_SUBS_ID range of a table.
+ * <p>
+ * The range is read in slices, one query per slice. After every slice the progress is recorded
+ * in the checkpoint journal, and the part of the range which is not read yet
+ * can be handed over to an idle worker, see {@link #trySplit(int)}.
+ * <p>
+ * Slices are of equal SUBS_SUBS_ID width, or with {@code pageSize} specified they are keyset pages
+ * of about that many rows, see {@link KeysetPage}. A page is read from the start of the rest of the range
+ * in SUBS_SUBS_ID order, limited to one row more than {@code pageSize}, and its end is the first SUBS_SUBS_ID
+ * which is not exported. All slices of a table are read by the same statement with bind variables,
+ * so it is parsed once and reused from the statement cache, and no cursor stays open for long
+ */
 @Slf4j
 public final class DiscountMigrationTask
         extends AbstractMigrationTask
-        implements Callable<DiscountMigrationTaskResult> {
+        implements IMigrationTask {
 
     private static final String SELECT_BY_SUBS_ID_QUERY_TEMPLATE
-            = "SELECT * FROM %s WHERE SUBS_SUBS_ID >= %s AND SUBS_SUBS_ID < %s";
+            = "SELECT %s%s FROM %s WHERE SUBS_SUBS_ID >= ? AND SUBS_SUBS_ID < ?";
+    private static final String CONDITION_TEMPLATE = " AND (%s)";
+    private static final String PAGE_ORDER = " ORDER BY SUBS_SUBS_ID";
+    /**
+     * First SUBS_SUBS_ID after the one which fills a whole page. Answered from the SUBS_SUBS_ID index,
+     * so the hints and the partition of {@link ReadStrategy} are not applied to it
+     */
+    private static final String NEXT_KEY_QUERY_TEMPLATE
+            = "SELECT MIN(SUBS_SUBS_ID) FROM %s WHERE SUBS_SUBS_ID > ? AND SUBS_SUBS_ID < ?";
     public static final String DISCOUNTS = "DISCOUNTS_";
 
+    private static final BigDecimal SLICES_PER_CHUNK = BigDecimal.valueOf(16);
+    /**
+     * A task is split only when at least that many slices are left
+     */
+    private static final int MIN_SLICES_TO_SPLIT = 2;
+
+    @Getter
     private final String tableName;
     private final BigDecimal firstSubsId;
-    private final BigDecimal lastSubsId;
-    private final Integer taskId;
-    private final CountDownLatch countDownLatch;
-    private final String outputDir;
+    @Getter
+    private final TableChunk chunk;
+    @Getter
+    private final int taskId;
+    private final MigrationParams params;
+    private final CheckpointJournal journal;
+    private final MigrationMetrics metrics;
+    private final DeltaExport delta;
+    private final TableProjection projection;
+    /**
+     * Output shared by the tasks, null when every task writes its own file
+     */
+    private final ISharedOutput sharedOutput;
+    private final QueryThrottle throttle;
+    private final BigDecimal sliceWidth;
+    /**
+     * Size of the csv file and number of rows in it when the task is resumed
+     */
+    private final long resumedBytesWritten;
+    private final long resumedNumberOfMigratedRows;
 
     private JdbcTemplate jdbcTemplate;
 
+    /**
+     * Start of the range which is not read yet, guarded by this
+     */
+    private BigDecimal nextSubsId;
+    /**
+     * Exclusive end of the range, can be moved back by {@link #trySplit(int)}, guarded by this
+     */
+    private BigDecimal lastSubsId;
+
     public DiscountMigrationTask(
-            final String tableName,
-            final BigDecimal firstSubsId,
-            final BigDecimal lastSubsId,
-            final Integer taskId,
-            CountDownLatch countDownLatch,
+            final TableChunk chunk,
+            final int taskId,
+            JdbcTemplate template,
+            MigrationParams params,
+            CheckpointJournal journal,
+            MigrationMetrics metrics,
+            DeltaExport delta,
+            TableProjection projection,
+            ISharedOutput sharedOutput,
+            QueryThrottle throttle) {
+        this(chunk, taskId, chunk.getFirstSubsId(), 0, 0, template, params, journal, metrics, delta, projection,
+                sharedOutput, throttle);
+    }
+
+    private DiscountMigrationTask(
+            final TableChunk chunk,
+            final int taskId,
+            final BigDecimal nextSubsId,
+            final long resumedBytesWritten,
+            final long resumedNumberOfMigratedRows,
             JdbcTemplate template,
-            String outputDir) {
-        this.tableName = tableName;
-        this.firstSubsId = firstSubsId;
-        this.lastSubsId = lastSubsId;
+            MigrationParams params,
+            CheckpointJournal journal,
+            MigrationMetrics metrics,
+            DeltaExport delta,
+            TableProjection projection,
+            ISharedOutput sharedOutput,
+            QueryThrottle throttle) {
+        this.chunk = chunk;
+        this.tableName = chunk.getTableName();
+        this.firstSubsId = chunk.getFirstSubsId();
+        this.lastSubsId = chunk.getLastSubsId();
+        this.nextSubsId = nextSubsId;
+        this.resumedBytesWritten = resumedBytesWritten;
+        this.resumedNumberOfMigratedRows = resumedNumberOfMigratedRows;
         this.taskId = taskId;
-        this.countDownLatch = countDownLatch;
         this.jdbcTemplate = template;
-        this.outputDir = outputDir;
+        this.params = params;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.delta = delta;
+        this.projection = projection;
+        this.sharedOutput = sharedOutput;
+        this.throttle = throttle;
+        BigDecimal width = lastSubsId.subtract(firstSubsId).divide(SLICES_PER_CHUNK, 0, RoundingMode.UP);
+        this.sliceWidth = width.max(BigDecimal.ONE);
+    }
+
+    /**
+     * Continues an unfinished task of an interrupted run from its last checkpoint.
+     * An output which can't be continued is written again from the start of the range.
+     * A run with shared files is never resumed, so the task writes its own file
+     */
+    public static DiscountMigrationTask resume(
+            JournaledTask journaledTask,
+            JdbcTemplate template,
+            MigrationParams params,
+            CheckpointJournal journal,
+            MigrationMetrics metrics,
+            DeltaExport delta,
+            TableProjection projection,
+            QueryThrottle throttle) {
+        final TableChunk chunk = journaledTask.toChunk();
+        final boolean continued = journaledTask.getBytesWritten() > 0 && canContinue(
+                getFileName(chunk.getTableName(), journaledTask.getTaskId(), params, delta),
+                journaledTask.getBytesWritten(),
+                params);
+        return new DiscountMigrationTask(
+                chunk,
+                journaledTask.getTaskId(),
+                continued ? journaledTask.getNextSubsId() : chunk.getFirstSubsId(),
+                continued ? journaledTask.getBytesWritten() : 0,
+                continued ? journaledTask.getNumberOfMigratedRows() : 0,
+                template,
+                params,
+                journal,
+                metrics,
+                delta,
+                projection,
+                null,
+                throttle);
     }
 
     @Override
     public DiscountMigrationTaskResult call() {
-        try {
-            countDownLatch.await();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        log.info("Task {}. Selecting from {}. Min subsId = {}. Max subsId = {}",
+                taskId, tableName, firstSubsId, getLastSubsId());
+
+        final long startNanos = System.nanoTime();
+        final String fileName = getFileName(tableName, taskId, params, delta);
+        final String deltaCondition = delta.getCondition(tableName);
+        final ReadStrategy readStrategy = ReadStrategy.of(params);
+        String query = String.format(SELECT_BY_SUBS_ID_QUERY_TEMPLATE,
+                readStrategy.getHintComment(), projection.getSelectList(tableName), readStrategy.getFrom(tableName));
+        if (deltaCondition != null) {
+            query += String.format(CONDITION_TEMPLATE, deltaCondition);
+        }
+        if (projection.getFilter() != null) {
+            query += String.format(CONDITION_TEMPLATE, projection.getFilter());
         }
+        final String sliceQuery = params.getPageSize() > 0 ?
+                KeysetPage.limit(query + PAGE_ORDER, params.getPageSize()) :
+                query;
+        long countMigratedRows = resumedNumberOfMigratedRows;
+        final long bytesWritten;
+        final long fileBytesWritten;
+        try (IRowSink rowSink = sharedOutput != null ?
+                sharedOutput.openRowSink(tableName) :
+                openRowSink(fileName, resumedBytesWritten, params, metrics)) {
+            boolean sliceExported = false;
+            Slice slice;
+            while ((slice = nextSlice()) != null) {
+                sliceExported = true;
+                throttle.acquire(tableName);
+                final long queryStartNanos = System.nanoTime();
+                long countSliceRows = 0;
+                try {
+                    countSliceRows = rowSink.export(jdbcTemplate, sliceQuery, slice.getRowCursor(),
+                            slice.firstSubsId, slice.lastSubsId);
+                    if (slice.page != null && slice.page.isKeyLargerThanPage()) {
+                        countSliceRows += exportKey(rowSink, query, slice.page);
+                    }
+                } finally {
+                    throttle.release(tableName, System.nanoTime() - queryStartNanos, countSliceRows);
+                }
+                countMigratedRows += countSliceRows;
+                metrics.addQuery(System.nanoTime() - queryStartNanos);
+                final BigDecimal sliceEndSubsId = endSlice(slice);
+                // The journal must not point past the bytes which are on disk
+                final long checkpointOffset = rowSink.checkpoint();
+                journal.progress(taskId, sliceEndSubsId, checkpointOffset, countMigratedRows);
+            }
+            if (!sliceExported && sharedOutput == null) {
+                // The range is empty, the file still gets the columns of the query, e.g. the parquet schema
+                rowSink.export(jdbcTemplate, query, firstSubsId, firstSubsId);
+            }
+            bytesWritten = rowSink.checkpoint();
+            fileBytesWritten = rowSink.getBytesWritten();
+            rowSink.commit(countMigratedRows);
+        }
+        journal.taskDone(taskId, bytesWritten, countMigratedRows);
+        DiscountMigrationTaskResult result = new DiscountMigrationTaskResult(this, countMigratedRows);
+        log.info("Task {} finished. Migrated {} rows. Min subsId = {}. Max subsId = {}. {}. Read with {}",
+                taskId, countMigratedRows, firstSubsId, getLastSubsId(),
+                formatSpeed(countMigratedRows - resumedNumberOfMigratedRows, fileBytesWritten, startNanos),
+                readStrategy);
+        return result;
+    }
 
-        CsvWriter csvWriter = new CsvWriter(outputDir + DISCOUNTS + tableName + "_" + taskId);
+    @Override
+    public synchronized long getRemainingRowCount() {
+        final BigDecimal remainingWidth = lastSubsId.subtract(nextSubsId).max(BigDecimal.ZERO);
+        final long estimatedRowCount = chunk.getEstimatedRowCount();
+        if (estimatedRowCount == TableChunk.UNKNOWN_ROW_COUNT) {
+            // Without an estimate the width of the range is the best guess
+            return remainingWidth.longValue();
+        }
+        final BigDecimal chunkWidth = chunk.getLastSubsId().subtract(chunk.getFirstSubsId());
+        return (long) (estimatedRowCount * remainingWidth.doubleValue() / chunkWidth.doubleValue());
+    }
 
-        log.info("Task {}. Selecting from {}. Min subsId = {}. Max subsId = {}",
-                lastSubsId, taskId, tableName, firstSubsId);
+    /**
+     * Gives the upper half of the range which is not read yet to a new task.
+     * Both halves have to be worth at least one fetch
+     */
+    @Override
+    public synchronized IMigrationTask trySplit(int newTaskId) {
+        final BigDecimal remainingWidth = lastSubsId.subtract(nextSubsId);
+        if (remainingWidth.compareTo(sliceWidth.multiply(BigDecimal.valueOf(MIN_SLICES_TO_SPLIT))) < 0) {
+            return null;
+        }
+        final long remainingRowCount = getRemainingRowCount();
+        if (remainingRowCount < 2L * params.getFetchSize()) {
+            return null;
+        }
+        final BigDecimal splitSubsId = nextSubsId.add(remainingWidth.divide(BigDecimal.valueOf(2), 0, RoundingMode.DOWN));
+        final TableChunk stolenChunk = new TableChunk(tableName, splitSubsId, lastSubsId,
+                chunk.getEstimatedRowCount() == TableChunk.UNKNOWN_ROW_COUNT ?
+                        TableChunk.UNKNOWN_ROW_COUNT :
+                        remainingRowCount / 2);
+        journal.chunkSplit(taskId, newTaskId, stolenChunk);
+        lastSubsId = splitSubsId;
+        return new DiscountMigrationTask(stolenChunk, newTaskId, jdbcTemplate, params, journal, metrics,
+                delta, projection, sharedOutput, throttle);
+    }
 
-        String query = String.format(SELECT_BY_SUBS_ID_QUERY_TEMPLATE, tableName, firstSubsId, lastSubsId);
-        SqlRowSet sqlRowSet = jdbcTemplate.queryForRowSet(query);
-        final String[] columnNames = sqlRowSet.getMetaData().getColumnNames();
-        int columnCount = sqlRowSet.getMetaData().getColumnCount();
+    private static String getFileName(String tableName, int taskId, MigrationParams params, DeltaExport delta) {
+        return params.getOutputDir() + DISCOUNTS + tableName + delta.getFileNameSuffix(tableName) + "_" + taskId;
+    }
 
-        csvWriter.writeHeader(columnNames);
+    private synchronized BigDecimal getLastSubsId() {
+        return lastSubsId;
+    }
 
-        long countMigratedRows = 0;
-        while (sqlRowSet.next()) {
-            List<Object> csvLine = createCsvLine(sqlRowSet, columnCount);
-            csvWriter.writeRecord(csvLine);
-            ++countMigratedRows;
+    /**
+     * Takes the next slice of the range. Slices are taken only when the previous one is exported,
+     * so the rest of the range stays available for splitting. A keyset page is given the rest of the range,
+     * it takes the SUBS_SUBS_IDs of its rows one by one, see {@link #claimPageKey(BigDecimal)}
+     *
+     * @return the slice, or null when the whole range is taken
+     */
+    private synchronized Slice nextSlice() {
+        if (nextSubsId.compareTo(lastSubsId) >= 0) {
+            return null;
         }
-        csvWriter.flush();
-        DiscountMigrationTaskResult result = new DiscountMigrationTaskResult(this, countMigratedRows);
-        log.info("Task {} finished. Migrated {} rows. Min subsId = {}. Max subsId = {}",
-                taskId, columnCount, firstSubsId, lastSubsId);
-        return result;
+        if (params.getPageSize() > 0) {
+            return new Slice(nextSubsId, lastSubsId, new KeysetPage(params.getPageSize(), this::claimPageKey));
+        }
+        final BigDecimal sliceFirstSubsId = nextSubsId;
+        nextSubsId = sliceFirstSubsId.add(sliceWidth).min(lastSubsId);
+        return new Slice(sliceFirstSubsId, nextSubsId, null);
+    }
+
+    /**
+     * Takes a SUBS_SUBS_ID of the page which is being read, so it is not given away by a split
+     *
+     * @return false if the SUBS_SUBS_ID is already given away
+     */
+    private synchronized boolean claimPageKey(BigDecimal subsId) {
+        if (subsId.compareTo(lastSubsId) >= 0) {
+            return false;
+        }
+        nextSubsId = subsId;
+        return true;
     }
 
+    /**
+     * Reads the rows of the SUBS_SUBS_ID which doesn't fit in a page by the query of a SUBS_SUBS_ID range,
+     * the range ends at the next SUBS_SUBS_ID
+     *
+     * @return number of written rows
+     */
+    private long exportKey(IRowSink rowSink, String query, KeysetPage page) {
+        final BigDecimal subsId = page.getNextPageKey();
+        if (!claimPageKey(subsId)) {
+            return 0;
+        }
+        final BigDecimal rangeLastSubsId = getLastSubsId();
+        final BigDecimal nextKey = jdbcTemplate.queryForObject(
+                String.format(NEXT_KEY_QUERY_TEMPLATE, tableName), BigDecimal.class, subsId, rangeLastSubsId);
+        page.skipKey(nextKey);
+        return rowSink.export(jdbcTemplate, query, subsId, nextKey == null ? rangeLastSubsId : nextKey);
+    }
+
+    /**
+     * @return end of the exported slice, the rest of the range starts there
+     */
+    private synchronized BigDecimal endSlice(Slice slice) {
+        if (slice.page == null) {
+            return slice.lastSubsId;
+        }
+        final BigDecimal nextPageSubsId = slice.page.getNextPageKey();
+        nextSubsId = nextPageSubsId == null ? lastSubsId : nextPageSubsId.min(lastSubsId);
+        return nextSubsId;
+    }
 
+    private static final class Slice {
+        private final BigDecimal firstSubsId;
+        private final BigDecimal lastSubsId;
+        /**
+         * Null for a slice of SUBS_SUBS_ID width
+         */
+        private final KeysetPage page;
+
+        private Slice(BigDecimal firstSubsId, BigDecimal lastSubsId, KeysetPage page) {
+            this.firstSubsId = firstSubsId;
+            this.lastSubsId = lastSubsId;
+            this.page = page;
+        }
+
+        private IRowCursor getRowCursor() {
+            return page == null ? IRowCursor.ALL : page;
+        }
+    }
 }
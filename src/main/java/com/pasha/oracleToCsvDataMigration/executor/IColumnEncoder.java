@@ -0,0 +1,27 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes a value of one column as a csv field.
+ * <p>
+ * Reading the value from the result set and writing it are separate steps,
+ * so that rows can be fetched on one thread and encoded on another
+ */
+public interface IColumnEncoder {
+
+    /**
+     * Reads the value of the column from the current row, {@code null} for an absent value
+     */
+    Object fetch(ResultSet resultSet) throws SQLException;
+
+    /**
+     * Writes a value previously returned by {@link #fetch(ResultSet)}
+     */
+    void encode(Object value, CsvWriter csvWriter);
+
+    default void encode(ResultSet resultSet, CsvWriter csvWriter) throws SQLException {
+        encode(fetch(resultSet), csvWriter);
+    }
+}
@@ -1,7 +1,30 @@
 package com.pasha.oracleToCsvDataMigration.executor;
 
+import java.util.concurrent.Callable;
+
 /**
- * Marker interface
+ * Migration task which can be ordered and split by {@link MigrationScheduler}
  */
-public interface IMigrationTask {
+public interface IMigrationTask extends Callable<DiscountMigrationTaskResult> {
+
+    int getTaskId();
+
+    /**
+     * The tasks are spread over the hosts of their tables by {@link MigrationScheduler}
+     */
+    String getTableName();
+
+    /**
+     * Estimated number of rows which are not migrated yet
+     */
+    long getRemainingRowCount();
+
+    /**
+     * Hands over a part of the rows which are not migrated yet to a new task
+     *
+     * @return the new task, or null if the task can not be split
+     */
+    default IMigrationTask trySplit(int newTaskId) {
+        return null;
+    }
 }
@@ -0,0 +1,29 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Moves a result set over the rows which go to the output. A query can end the output
+ * before its result set ends, e.g. a keyset page, see {@link KeysetPage}
+ */
+@FunctionalInterface
+public interface IRowCursor {
+
+    /**
+     * All the rows of the result set
+     */
+    IRowCursor ALL = ResultSet::next;
+
+    /**
+     * @return false when the output has no more rows
+     */
+    boolean next(ResultSet resultSet) throws SQLException;
+
+    /**
+     * Type of the result set the cursor needs, e.g. a scrollable one to look ahead
+     */
+    default int getResultSetType() {
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+}
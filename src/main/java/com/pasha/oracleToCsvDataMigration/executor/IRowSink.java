@@ -0,0 +1,72 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Output file of a migration task. Rows of one or more queries go to one sink,
+ * so all the queries must return the same columns
+ */
+public interface IRowSink extends Closeable {
+
+    /**
+     * Writes the rows of the result set the cursor moves over
+     *
+     * @return number of written rows
+     */
+    long writeRows(ResultSet resultSet, IRowCursor rowCursor) throws SQLException;
+
+    /**
+     * Makes everything written so far durable
+     *
+     * @return offset a resumed task can continue the output from, 0 if the output can't be continued
+     */
+    long checkpoint();
+
+    /**
+     * Bytes written to the output file by this sink, after compression
+     */
+    long getBytesWritten();
+
+    /**
+     * Closes the output and gives it its final name, to be called when all the rows are written.
+     * An output which is closed without a commit stays under its temporary name
+     *
+     * @param rowCount number of rows in the output, including the ones written before a resume
+     */
+    void commit(long rowCount);
+
+    @Override
+    void close();
+
+    /**
+     * Writes all the rows returned by the query. Rows are pulled from the open cursor
+     * {@code fetchSize} at a time, so memory usage does not depend on the size of the table
+     *
+     * @param args values of the bind variables of the query
+     * @return number of written rows
+     */
+    default long export(JdbcTemplate jdbcTemplate, String query, Object... args) {
+        return export(jdbcTemplate, query, IRowCursor.ALL, args);
+    }
+
+    /**
+     * Writes the rows of the query the cursor moves over, the rest of the result set is not fetched
+     *
+     * @param args values of the bind variables of the query
+     * @return number of written rows
+     */
+    default long export(JdbcTemplate jdbcTemplate, String query, IRowCursor rowCursor, Object... args) {
+        final Long countWrittenRows = jdbcTemplate.query(
+                connection -> connection.prepareStatement(
+                        query, rowCursor.getResultSetType(), ResultSet.CONCUR_READ_ONLY),
+                new ArgumentPreparedStatementSetter(args),
+                (ResultSetExtractor<Long>) resultSet -> writeRows(resultSet, rowCursor));
+        return countWrittenRows == null ? 0 : countWrittenRows;
+    }
+}
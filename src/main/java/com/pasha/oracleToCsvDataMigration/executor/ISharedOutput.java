@@ -0,0 +1,25 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import java.io.Closeable;
+
+/**
+ * Output shared by all the tasks of a run, instead of a file per task
+ */
+public interface ISharedOutput extends Closeable {
+
+    /**
+     * Sink of a task which writes the rows of the table to the shared output
+     */
+    IRowSink openRowSink(String tableName);
+
+    /**
+     * Finishes the output, to be called when all the tasks are finished
+     */
+    void commit();
+
+    /**
+     * Closes the output. An output which is closed without a commit is left unfinished
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,23 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+/**
+ * Tables which {@link MigrationScheduler} takes one at a time while the run goes on, whenever a worker
+ * has no pending task, e.g. the tables a worker leases from a run shared with other workers
+ */
+public interface ITableFeed {
+
+    /**
+     * @return next table to migrate, or null if there is none to take at the moment
+     */
+    String claim();
+
+    /**
+     * @return whether no table is left to take and every taken table is complete
+     */
+    boolean isFinished();
+
+    /**
+     * Called when the last task of a taken table is finished
+     */
+    void complete(String tableName);
+}
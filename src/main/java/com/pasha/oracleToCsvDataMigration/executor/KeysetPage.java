@@ -0,0 +1,99 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Predicate;
+
+/**
+ * Rows of a keyset page, read from a query ordered by SUBS_SUBS_ID which returns at most {@code pageSize + 1}
+ * rows. When the query returns more than {@code pageSize} rows, the rows of its last SUBS_SUBS_ID can go on
+ * past it, so the page ends before that SUBS_SUBS_ID and the rows of one SUBS_SUBS_ID are never divided
+ * between pages. The result set is scrolled to its last row to find it before any row goes to the output.
+ * <p>
+ * Every SUBS_SUBS_ID is claimed by the task before its rows go to the output, the page ends at the first
+ * one which the task has given away by a split meanwhile.
+ * <p>
+ * Not thread safe
+ */
+final class KeysetPage implements IRowCursor {
+
+    static final String KEY_COLUMN_NAME = "SUBS_SUBS_ID";
+
+    private final int pageSize;
+    private final Predicate<BigDecimal> keyClaim;
+    private int keyColumnNumber;
+    /**
+     * Last SUBS_SUBS_ID of a query which has returned more than {@code pageSize} rows, null otherwise
+     */
+    private BigDecimal cutKey;
+    private BigDecimal key;
+    /**
+     * First SUBS_SUBS_ID after the page, null when the page has read the result set to its end
+     */
+    private BigDecimal nextPageKey;
+
+    /**
+     * @param keyClaim takes a SUBS_SUBS_ID for the page, false if it is out of the range of the task
+     */
+    KeysetPage(int pageSize, Predicate<BigDecimal> keyClaim) {
+        this.pageSize = pageSize;
+        this.keyClaim = keyClaim;
+    }
+
+    /**
+     * Limits the ordered query of a page, its result set is scrolled
+     */
+    static String limit(String orderedQuery, int pageSize) {
+        return "SELECT * FROM (" + orderedQuery + ") WHERE ROWNUM <= " + (pageSize + 1);
+    }
+
+    @Override
+    public int getResultSetType() {
+        return ResultSet.TYPE_SCROLL_INSENSITIVE;
+    }
+
+    @Override
+    public boolean next(ResultSet resultSet) throws SQLException {
+        if (keyColumnNumber == 0) {
+            keyColumnNumber = resultSet.findColumn(KEY_COLUMN_NAME);
+            if (resultSet.last() && resultSet.getRow() > pageSize) {
+                cutKey = resultSet.getBigDecimal(keyColumnNumber);
+            }
+            resultSet.beforeFirst();
+        }
+        if (nextPageKey != null || !resultSet.next()) {
+            return false;
+        }
+        final BigDecimal rowKey = resultSet.getBigDecimal(keyColumnNumber);
+        if (key == null || rowKey.compareTo(key) != 0) {
+            if ((cutKey != null && rowKey.compareTo(cutKey) == 0) || !keyClaim.test(rowKey)) {
+                nextPageKey = rowKey;
+                return false;
+            }
+            key = rowKey;
+        }
+        return true;
+    }
+
+    BigDecimal getNextPageKey() {
+        return nextPageKey;
+    }
+
+    /**
+     * @return whether the rows of the first SUBS_SUBS_ID of the page don't fit in it, so the page is empty
+     * and that SUBS_SUBS_ID has to be read on its own
+     */
+    boolean isKeyLargerThanPage() {
+        return key == null && cutKey != null && cutKey.compareTo(nextPageKey) == 0;
+    }
+
+    /**
+     * Moves the page past its first SUBS_SUBS_ID when it is read on its own
+     *
+     * @param nextKey first SUBS_SUBS_ID after it, null if the range has no more of them
+     */
+    void skipKey(BigDecimal nextKey) {
+        nextPageKey = nextKey;
+    }
+}
@@ -0,0 +1,48 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Counts bytes and time of the writes to the underlying channel
+ */
+public final class MeteredChannel implements WritableByteChannel {
+
+    private final WritableByteChannel channel;
+    private final MigrationMetrics metrics;
+    private long bytesWritten;
+
+    public MeteredChannel(WritableByteChannel channel, MigrationMetrics metrics) {
+        this.channel = channel;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        final long startNanos = System.nanoTime();
+        final int written = channel.write(src);
+        metrics.addWritten(written, System.nanoTime() - startNanos);
+        bytesWritten += written;
+        return written;
+    }
+
+    /**
+     * Bytes written through this channel
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
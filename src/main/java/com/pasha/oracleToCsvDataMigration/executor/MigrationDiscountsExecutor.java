@@ -1,162 +1,454 @@
 package com.pasha.oracleToCsvDataMigration.executor;
 
+import com.pasha.oracleToCsvDataMigration.checkpoint.CheckpointJournal;
+import com.pasha.oracleToCsvDataMigration.config.ConnectionPoolSizer;
+import com.pasha.oracleToCsvDataMigration.config.ShardRouter;
+import com.pasha.oracleToCsvDataMigration.fanin.FanInOutput;
+import com.pasha.oracleToCsvDataMigration.incremental.DeltaExport;
+import com.pasha.oracleToCsvDataMigration.incremental.IncrementalExportPlanner;
+import com.pasha.oracleToCsvDataMigration.lease.TableLeaseCoordinator;
+import com.pasha.oracleToCsvDataMigration.checkpoint.JournaledTask;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import com.pasha.oracleToCsvDataMigration.metrics.ProgressReporter;
+import com.pasha.oracleToCsvDataMigration.planner.IChunkPlanner;
+import com.pasha.oracleToCsvDataMigration.planner.TableChunk;
+import com.pasha.oracleToCsvDataMigration.planner.TableStatistics;
+import com.pasha.oracleToCsvDataMigration.stream.StreamOutput;
+import com.pasha.oracleToCsvDataMigration.throttle.QueryThrottle;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @Slf4j
 @Component
 public final class MigrationDiscountsExecutor implements IMigrationExecutor {
 
-    private static final String MIN_MAX_SUBS_ID_QUERY_TEMPLATE = "SELECT MIN(SUBS_SUBS_ID), MAX(SUBS_SUBS_ID) from %s";
-    private static final String MIN_SUBS_ID_COLUMN_NAME = "MIN(SUBS_SUBS_ID)";
-    private static final String MAX_SUBS_ID_COLUMN_NAME = "MAX(SUBS_SUBS_ID)";
     private static final String LOCAL_DATE_PATTERN = "yyyy/MM/dd HH:mm:ss";
+    /**
+     * Times a waiting worker looks for expired leases during one lease
+     */
+    private static final int LEASE_POLLS = 10;
 
-    private CountDownLatch countDownLatch;
-    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final List<IChunkPlanner> chunkPlanners;
+    private final TableStatistics tableStatistics;
+    private final MigrationMetrics metrics;
+    private final ConnectionPoolSizer connectionPoolSizer;
+    private final IncrementalExportPlanner incrementalExportPlanner;
 
     @Autowired
-    public MigrationDiscountsExecutor(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
-        countDownLatch = new CountDownLatch(1);
+    public MigrationDiscountsExecutor(
+            ShardRouter shardRouter,
+            List<IChunkPlanner> chunkPlanners,
+            TableStatistics tableStatistics,
+            MigrationMetrics metrics,
+            ConnectionPoolSizer connectionPoolSizer,
+            IncrementalExportPlanner incrementalExportPlanner) {
+        this.shardRouter = shardRouter;
+        this.chunkPlanners = chunkPlanners;
+        this.tableStatistics = tableStatistics;
+        this.metrics = metrics;
+        this.connectionPoolSizer = connectionPoolSizer;
+        this.incrementalExportPlanner = incrementalExportPlanner;
     }
 
     @Override
     public void execute(MigrationParams params) {
-        jdbcTemplate.setFetchSize(params.getFetchSize());
+        if (params.getWorkerId() == null) {
+            migrate(params, null);
+        } else {
+            migrateLeasedTables(params);
+        }
+    }
+
+    /**
+     * Migrates the tables of the run which this worker leases, until every table is done by some worker.
+     * The pools, the journal and the metrics are set up once for the worker, and a table is leased
+     * whenever a thread has nothing else to do. While the other workers hold the rest of the tables
+     * the worker keeps polling, to take over the tables of a worker which dies
+     */
+    private void migrateLeasedTables(MigrationParams params) {
         List<String> tableNames = params.getTableNamesToVisit();
-        Integer numThreads = params.getNumThreads();
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-        ExecutorCompletionService<DiscountMigrationTaskResult> completionService
-                = new ExecutorCompletionService<>(executor);
-        Integer numTableChunks = params.getNumTableChunks();
+        try (TableLeaseCoordinator coordinator = TableLeaseCoordinator.open(
+                params.getOutputDir(), params.getWorkerId(), params.getLeaseSeconds())) {
+            migrate(params.forLeasedTables(coordinator.getWorkerOutputDir(), tableNames),
+                    new LeasedTableFeed(coordinator, tableNames));
+            coordinator.writeRunManifest(tableNames);
+        }
+    }
+
+    /**
+     * @param tableFeed null to plan all the tables of the params up front
+     */
+    private void migrate(MigrationParams params, ITableFeed tableFeed) {
+        List<ShardRouter.Host> hosts = shardRouter.getHosts(params.getTableNamesToVisit());
+        Map<ShardRouter.Host, Integer> poolSizes =
+                connectionPoolSizer.resize(params.getTableNamesToVisit(), params.getPoolSize());
+        connectionPoolSizer.warmUp(poolSizes);
+        // The fetch size of the run is set on templates of its own, the shared ones are used by the planners
+        Map<ShardRouter.Host, JdbcTemplate> hostJdbcTemplates = new HashMap<>();
+        for (ShardRouter.Host host : hosts) {
+            JdbcTemplate taskJdbcTemplate = new JdbcTemplate(host.getDataSource());
+            taskJdbcTemplate.setFetchSize(params.getFetchSize());
+            hostJdbcTemplates.put(host, taskJdbcTemplate);
+        }
+        Function<String, JdbcTemplate> taskJdbcTemplates =
+                tableName -> hostJdbcTemplates.get(shardRouter.getHost(tableName));
+        DeltaExport delta = incrementalExportPlanner.plan(params);
+        TableProjection projection = TableProjection.load(params);
+        log.info("Tables are read with {}", ReadStrategy.of(params));
+        for (ShardRouter.Host host : hosts) {
+            log.info("Sessions of pool {} are set up with {}", host,
+                    host.getDataSource().getConnectionInitSql() == null ?
+                            "no statement" :
+                            host.getDataSource().getConnectionInitSql());
+        }
 
-        int numberSubmittedTasks;
-        numberSubmittedTasks = numTableChunks.equals(1) ?
-                submitSimpleDiscountMigrationTasks(params, completionService) :
-                submitDiscountMigrationTasks(params, completionService);
+        List<JournaledTask> journaledTasks = params.getResume() ?
+                CheckpointJournal.load(params.getOutputDir()) :
+                new ArrayList<>();
+        if (params.getResume() && journaledTasks.isEmpty()) {
+            log.info("No journal of a previous run is found in {}, starting from scratch", params.getOutputDir());
+        }
+        CheckpointJournal journal = journaledTasks.isEmpty() ?
+                CheckpointJournal.create(params.getOutputDir()) :
+                CheckpointJournal.append(params.getOutputDir());
+        ISharedOutput sharedOutput = openSharedOutput(params, delta);
+        try {
+            int numWorkers = params.getNumThreads();
+            QueryThrottle throttle = QueryThrottle.create(
+                    params.getAdaptiveConcurrency(), params.getMaxRowsPerSecond(), numWorkers, metrics);
+            long numberOfPreviouslyMigratedRows = 0;
+            int firstTaskId = 0;
+            List<IMigrationTask> resumedTasks = new ArrayList<>();
+            Set<String> plannedTableNames = new HashSet<>();
+            for (JournaledTask journaledTask : journaledTasks) {
+                firstTaskId = Math.max(firstTaskId, journaledTask.getTaskId() + 1);
+                plannedTableNames.add(journaledTask.getTableName());
+                if (journaledTask.isDone()) {
+                    numberOfPreviouslyMigratedRows += journaledTask.getNumberOfMigratedRows();
+                } else {
+                    resumedTasks.add(resumeTask(
+                            journaledTask, params, journal, taskJdbcTemplates, delta, projection, throttle));
+                }
+            }
+            if (!journaledTasks.isEmpty()) {
+                log.info("Resuming previous run: {} of {} tasks are finished, {} rows are migrated",
+                        journaledTasks.size() - resumedTasks.size(), journaledTasks.size(),
+                        numberOfPreviouslyMigratedRows);
+            }
+            List<String> tableNamesToPlan = new ArrayList<>();
+            if (tableFeed == null) {
+                for (String tableName : params.getTableNamesToVisit()) {
+                    if (!plannedTableNames.contains(tableName)) {
+                        tableNamesToPlan.add(tableName);
+                    }
+                }
+            }
 
+            MigrationScheduler scheduler = new MigrationScheduler(numWorkers, firstTaskId,
+                    shardRouter, countTasksPerHost(params, poolSizes, numWorkers), metrics);
+            IChunkPlanner chunkPlanner = params.getNumTableChunks().equals(1) ?
+                    null :
+                    findChunkPlanner(params.getChunkPlanner());
+            Function<String, List<IMigrationTask>> tablePlanner = tableName -> planTable(tableName, chunkPlanner,
+                    scheduler, params, journal, taskJdbcTemplates.apply(tableName), delta, projection, sharedOutput,
+                    throttle);
+            if (tableFeed != null) {
+                scheduler.feed(tableFeed, TimeUnit.SECONDS.toMillis(params.getLeaseSeconds()) / LEASE_POLLS,
+                        tableName -> {
+                            List<IMigrationTask> tasks = tablePlanner.apply(tableName);
+                            metrics.tasksPlanned(tasks.size(), estimateRowCount(tasks));
+                            return tasks;
+                        });
+            }
+            execute(params, scheduler, numWorkers, resumedTasks, tableNamesToPlan, tablePlanner,
+                    numberOfPreviouslyMigratedRows);
+            if (sharedOutput != null) {
+                sharedOutput.commit();
+            }
+        } finally {
+            try {
+                if (sharedOutput != null) {
+                    sharedOutput.close();
+                }
+            } finally {
+                journal.close();
+            }
+        }
+        incrementalExportPlanner.commit(params);
+    }
+
+    /**
+     * Runs the tasks while the tables are planned, the tasks of a table are submitted to the scheduler
+     * as soon as it is planned, so the workers don't wait for the planning of all the tables
+     */
+    private void execute(
+            MigrationParams params,
+            MigrationScheduler scheduler,
+            int numWorkers,
+            List<IMigrationTask> resumedTasks,
+            List<String> tableNamesToPlan,
+            Function<String, List<IMigrationTask>> tablePlanner,
+            long numberOfPreviouslyMigratedRows) {
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern(LOCAL_DATE_PATTERN);
         LocalDateTime startTime = LocalDateTime.now();
         log.info("-----------------------------------------------");
-        log.info("Finish submitting tasks...");
-        log.info("Number of tables to be migrated: {}", tableNames.size());
-        log.info("Number of submitted tasks: {}", numberSubmittedTasks);
+        log.info("Number of tables to be migrated: {}", params.getTableNamesToVisit().size());
+        log.info("Number of tables to be planned: {}", tableNamesToPlan.size());
+        log.info("Number of resumed tasks: {}", resumedTasks.size());
         log.info("-----------------------------------------------");
-        log.info("Start performing tasks with {} threads", numThreads);
+        log.info("Start performing tasks with {} threads, planning tables with {} threads",
+                numWorkers, params.getPlanThreads());
 
-        countDownLatch.countDown();
+        metrics.start(numWorkers);
+        metrics.tasksPlanned(resumedTasks.size(), estimateRowCount(resumedTasks));
+        scheduler.submit(resumedTasks);
 
-        BigDecimal numberOfMigratedRows = new BigDecimal(0);
-        for (int i = 0; i < numberSubmittedTasks; ++i) {
-            try {
-                DiscountMigrationTaskResult result = completionService.take().get();
-                numberOfMigratedRows = numberOfMigratedRows.add(new BigDecimal(result.getNumberOfMigratedRows()));
-            } catch (InterruptedException | ExecutionException e) {
-                throw new RuntimeException(e);
-            }
+        long planningStartNanos = System.nanoTime();
+        ExecutorService planners = Executors.newFixedThreadPool(params.getPlanThreads());
+        List<CompletableFuture<Void>> plannedTables = new ArrayList<>(tableNamesToPlan.size());
+        for (String tableName : tableNamesToPlan) {
+            plannedTables.add(CompletableFuture.runAsync(() -> {
+                List<IMigrationTask> tasks = tablePlanner.apply(tableName);
+                metrics.tasksPlanned(tasks.size(), estimateRowCount(tasks));
+                scheduler.submit(tasks);
+            }, planners).whenComplete((ignored, e) -> {
+                if (e != null) {
+                    log.error("Planning of {} failed", tableName, e);
+                    scheduler.fail(e);
+                }
+            }));
+        }
+        CompletableFuture.allOf(plannedTables.toArray(new CompletableFuture[0])).thenRun(() -> {
+            log.info("-----------------------------------------------");
+            log.info("Finish planning tasks in {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - planningStartNanos));
+            log.info("Number of submitted tasks: {}", metrics.getTotalTasks());
+            log.info("-----------------------------------------------");
+            scheduler.allSubmitted();
+        });
+
+        List<DiscountMigrationTaskResult> results;
+        try (ProgressReporter ignored = new ProgressReporter(metrics, params.getProgressInterval())) {
+            results = scheduler.run();
+        } finally {
+            planners.shutdownNow();
+            metrics.finish();
+        }
+        long numberOfMigratedRows = numberOfPreviouslyMigratedRows;
+        for (DiscountMigrationTaskResult result : results) {
+            numberOfMigratedRows += result.getNumberOfMigratedRows();
         }
         LocalDateTime endTime = LocalDateTime.now();
 
         log.info("Migration finished!");
+        log.info("Number of performed tasks, including split ones: {}", results.size());
         log.info("Total number of migrated rows: {}", numberOfMigratedRows);
         log.info("Start time: {}", dtf.format(startTime));
         log.info("End time: {}", dtf.format(endTime));
+        log.info("Rows per second: {}. MB per second: {}",
+                Math.round(metrics.getRowsPerSecond()),
+                String.format("%.1f", metrics.getBytesPerSecond() / (1 << 20)));
+        log.info("Time of all threads, s: fetch {}, encode {}, compress {}, write {}, throttle {}",
+                String.format("%.1f", metrics.getFetchSeconds()),
+                String.format("%.1f", metrics.getEncodeSeconds()),
+                String.format("%.1f", metrics.getCompressSeconds()),
+                String.format("%.1f", metrics.getWriteSeconds()),
+                String.format("%.1f", metrics.getThrottleSeconds()));
+        log.info("Tables are read with {}", ReadStrategy.of(params));
+    }
+
+    /**
+     * @return null when every task writes its own file
+     */
+    private ISharedOutput openSharedOutput(MigrationParams params, DeltaExport delta) {
+        if (params.getStreamTo() != null) {
+            return StreamOutput.open(params, metrics);
+        }
+        if (params.getFanInFiles() > 0) {
+            return FanInOutput.open(params, metrics, delta.getFileNameSuffix());
+        }
+        return null;
+    }
+
+    /**
+     * A host runs no more tasks than its pool has connections for besides the planners
+     */
+    private static Map<ShardRouter.Host, Integer> countTasksPerHost(
+            MigrationParams params,
+            Map<ShardRouter.Host, Integer> poolSizes,
+            int numWorkers) {
+        int maxTasksPerHost = params.getMaxThreadsPerHost() > 0 ? params.getMaxThreadsPerHost() : numWorkers;
+        Map<ShardRouter.Host, Integer> tasksPerHost = new HashMap<>();
+        for (Map.Entry<ShardRouter.Host, Integer> poolSize : poolSizes.entrySet()) {
+            tasksPerHost.put(poolSize.getKey(),
+                    Math.max(1, Math.min(maxTasksPerHost, poolSize.getValue() - params.getPlanThreads())));
+        }
+        return tasksPerHost;
+    }
+
+    /**
+     * @return rows which are left to migrate, or -1 if some task has no estimate
+     */
+    private static long estimateRowCount(List<IMigrationTask> tasks) {
+        long estimatedRowCount = 0;
+        for (IMigrationTask task : tasks) {
+            final long remainingRowCount = task.getRemainingRowCount();
+            if (remainingRowCount < 0) {
+                return -1;
+            }
+            estimatedRowCount += remainingRowCount;
+        }
+        return estimatedRowCount;
     }
 
-    private int submitSimpleDiscountMigrationTasks(
+    /**
+     * Creates and journals the tasks of a table: the whole table when there is one chunk per table,
+     * the chunks found by the chunk planner otherwise
+     */
+    private List<IMigrationTask> planTable(
+            String tableName,
+            IChunkPlanner chunkPlanner,
+            MigrationScheduler scheduler,
             MigrationParams params,
-            ExecutorCompletionService<DiscountMigrationTaskResult> completionService) {
-        int numberSubmittedTasks = 0;
-        for (String table : params.getTableNamesToVisit()) {
+            CheckpointJournal journal,
+            JdbcTemplate taskJdbcTemplate,
+            DeltaExport delta,
+            TableProjection projection,
+            ISharedOutput sharedOutput,
+            QueryThrottle throttle) {
+        List<IMigrationTask> tasks = new ArrayList<>();
+        if (chunkPlanner == null) {
+            long estimatedRowCount = tableStatistics.findRowCount(tableName);
             SimpleDiscountMigrationTask task = new SimpleDiscountMigrationTask(
-                    table,
-                    numberSubmittedTasks,
-                    countDownLatch,
-                    jdbcTemplate,
-                    params.getOutputDir());
-            completionService.submit(task);
-            ++numberSubmittedTasks;
-        }
-        return numberSubmittedTasks;
+                    tableName,
+                    scheduler.allocateTaskIds(1),
+                    estimatedRowCount,
+                    taskJdbcTemplate,
+                    params,
+                    journal,
+                    metrics,
+                    delta,
+                    projection,
+                    sharedOutput,
+                    throttle);
+            journal.tablePlanned(task.getTaskId(), tableName, estimatedRowCount);
+            tasks.add(task);
+            return tasks;
+        }
+        List<TableChunk> chunks = chunkPlanner.plan(tableName, params);
+        log.info("Table {} is split into {} chunks by {} planner", tableName, chunks.size(), chunkPlanner.getName());
+        if (chunks.isEmpty()) {
+            return tasks;
+        }
+        int firstTaskId = scheduler.allocateTaskIds(chunks.size());
+        for (int i = 0; i < chunks.size(); ++i) {
+            tasks.add(new DiscountMigrationTask(
+                    chunks.get(i),
+                    firstTaskId + i,
+                    taskJdbcTemplate,
+                    params,
+                    journal,
+                    metrics,
+                    delta,
+                    projection,
+                    sharedOutput,
+                    throttle));
+        }
+        journal.chunksPlanned(firstTaskId, chunks);
+        return tasks;
     }
 
-    private int submitDiscountMigrationTasks(
+    /**
+     * A chunk continues from its last checkpoint, a whole table task is migrated again from scratch
+     */
+    private IMigrationTask resumeTask(
+            JournaledTask journaledTask,
             MigrationParams params,
-            ExecutorCompletionService<DiscountMigrationTaskResult> completionService) {
-        int numberSubmittedTasks = 0;
-        BigDecimal minSubsId = params.getMinSubsId();
-        BigDecimal maxSubsId = params.getMaxSubsId();
-        if (minSubsId == null || maxSubsId == null) {
-            for (String tableName : params.getTableNamesToVisit()) {
-                List<BigDecimal> minAndMaxSubsIds = findMinAndMaxSubsIds(params, tableName);
-                minSubsId = minAndMaxSubsIds.get(0);
-                maxSubsId = minAndMaxSubsIds.get(1);
-
-                if (minSubsId == null || maxSubsId == null) {
-                    continue;
-                }
+            CheckpointJournal journal,
+            Function<String, JdbcTemplate> taskJdbcTemplates,
+            DeltaExport delta,
+            TableProjection projection,
+            QueryThrottle throttle) {
+        JdbcTemplate taskJdbcTemplate = taskJdbcTemplates.apply(journaledTask.getTableName());
+        if (journaledTask.isChunk()) {
+            return DiscountMigrationTask.resume(
+                    journaledTask, taskJdbcTemplate, params, journal, metrics, delta, projection, throttle);
+        }
+        return new SimpleDiscountMigrationTask(
+                journaledTask.getTableName(),
+                journaledTask.getTaskId(),
+                journaledTask.getEstimatedRowCount(),
+                taskJdbcTemplate,
+                params,
+                journal,
+                metrics,
+                delta,
+                projection,
+                null,
+                throttle);
+    }
 
-                BigDecimal stepSubsId = calculateStep(minSubsId, maxSubsId, params.getNumTableChunks());
-                BigDecimal currentSubsId = minSubsId;
-
-                while (currentSubsId.compareTo(maxSubsId) <= 0) {
-                    BigDecimal nextSubsId = currentSubsId.add(stepSubsId);
-                    DiscountMigrationTask task = new DiscountMigrationTask(
-                            tableName,
-                            currentSubsId,
-                            nextSubsId,
-                            numberSubmittedTasks,
-                            countDownLatch,
-                            jdbcTemplate,
-                            params.getOutputDir());
-                    completionService.submit(task);
-                    ++numberSubmittedTasks;
-                    currentSubsId = nextSubsId;
-                }
+    private IChunkPlanner findChunkPlanner(String name) {
+        for (IChunkPlanner chunkPlanner : chunkPlanners) {
+            if (chunkPlanner.getName().equalsIgnoreCase(name)) {
+                return chunkPlanner;
             }
         }
-        return numberSubmittedTasks;
+        throw new IllegalArgumentException("Unknown chunk planner: " + name);
     }
 
-    private List<BigDecimal> findMinAndMaxSubsIds(MigrationParams params, String tableName) {
-        List<BigDecimal> res = new ArrayList<>(2);
-        List<String> tableNamesToVisit = params.getTableNamesToVisit();
+    /**
+     * Leases the tables of the run one at a time
+     */
+    private static final class LeasedTableFeed implements ITableFeed {
+        private final TableLeaseCoordinator coordinator;
+        private final List<String> tableNames;
+        private boolean waiting;
 
-        if (CollectionUtils.isEmpty(tableNamesToVisit)) {
-            throw new NullPointerException("Table name was missed or generated incorrectly");
+        private LeasedTableFeed(TableLeaseCoordinator coordinator, List<String> tableNames) {
+            this.coordinator = coordinator;
+            this.tableNames = tableNames;
         }
 
-        log.info("Searching for min and max SUBS_SUBS_ID values");
-        String query = String.format(MIN_MAX_SUBS_ID_QUERY_TEMPLATE, tableName);
-        SqlRowSet sqlRowSet = jdbcTemplate.queryForRowSet(query);
-        sqlRowSet.next();
-        BigDecimal minSubsId = sqlRowSet.getBigDecimal(MIN_SUBS_ID_COLUMN_NAME);
-        res.add(minSubsId);
-        log.info("Min SUBS_SUBS_ID value: {}", minSubsId);
-        BigDecimal maxSubsId = sqlRowSet.getBigDecimal(MAX_SUBS_ID_COLUMN_NAME);
-        res.add(maxSubsId);
-        log.info("Max SUBS_SUBS_ID value: {}", maxSubsId);
+        @Override
+        public String claim() {
+            List<String> leasedTableNames = coordinator.claim(tableNames, 1);
+            if (leasedTableNames.isEmpty()) {
+                if (!waiting && !coordinator.isFinished(tableNames)) {
+                    log.info("Waiting for the tables leased by the other workers");
+                    waiting = true;
+                }
+                return null;
+            }
+            waiting = false;
+            return leasedTableNames.get(0);
+        }
 
-        return res;
-    }
+        @Override
+        public boolean isFinished() {
+            return coordinator.isFinished(tableNames);
+        }
 
-    private BigDecimal calculateStep(BigDecimal min, BigDecimal max, Integer numOfChunks) {
-        return max.subtract(min).divide(BigDecimal.valueOf(numOfChunks), BigDecimal.ROUND_UP);
+        @Override
+        public void complete(String tableName) {
+            coordinator.complete(tableName);
+        }
     }
 }
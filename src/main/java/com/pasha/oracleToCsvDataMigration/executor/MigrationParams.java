@@ -1,5 +1,7 @@
 package com.pasha.oracleToCsvDataMigration.executor;
 
+import com.pasha.oracleToCsvDataMigration.incremental.HighWaterMarkStore;
+import com.pasha.oracleToCsvDataMigration.planner.UniformChunkPlanner;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -21,11 +23,40 @@ public final class MigrationParams {
     private final BigDecimal minSubsId;
     private final BigDecimal maxSubsId;
     private final Integer fetchSize;
+    private final Integer encoderThreads;
+    private final String chunkPlanner;
+    private final Boolean resume;
+    private final OutputCompression compression;
+    private final Integer compressionThreads;
+    private final OutputFormat outputFormat;
+    private final Integer progressInterval;
+    private final Integer planThreads;
+    private final Integer poolSize;
+    private final String changeColumn;
+    private final String stateFile;
+    private final Integer pageSize;
+    private final Integer fanInFiles;
+    private final Integer maxFileSizeMb;
+    private final Boolean adaptiveConcurrency;
+    private final Integer maxRowsPerSecond;
+    private final Integer maxThreadsPerHost;
+    private final String workerId;
+    private final Integer leaseSeconds;
+    private final String streamTo;
+    private final String columns;
+    private final String projectionFile;
+    private final String filter;
+    private final String hints;
+    private final String partition;
 
     private final List<String> tableNamesToVisit;
 
     public final static class Builder {
         public static final int DEFAULT_FETCH_SIZE = 50_000;
+        public static final int DEFAULT_PROGRESS_INTERVAL = 10;
+        public static final int DEFAULT_PLAN_THREADS = 4;
+        public static final int DEFAULT_MAX_FILE_SIZE_MB = 1024;
+        public static final int DEFAULT_LEASE_SECONDS = 60;
         private String tableNamePrefix;
         private String shards;
         private String partitions;
@@ -35,6 +66,31 @@ public final class MigrationParams {
         private BigDecimal minSubsId;
         private BigDecimal maxSubsId;
         private Integer fetchSize;
+        private Integer encoderThreads;
+        private String chunkPlanner;
+        private Boolean resume;
+        private OutputCompression compression;
+        private Integer compressionThreads;
+        private OutputFormat outputFormat;
+        private Integer progressInterval;
+        private Integer planThreads;
+        private Integer poolSize;
+        private String changeColumn;
+        private String stateFile;
+        private Integer pageSize;
+        private Integer fanInFiles;
+        private Integer maxFileSizeMb;
+        private Boolean adaptiveConcurrency;
+        private Integer maxRowsPerSecond;
+        private Integer maxThreadsPerHost;
+        private String workerId;
+        private Integer leaseSeconds;
+        private String streamTo;
+        private String columns;
+        private String projectionFile;
+        private String filter;
+        private String hints;
+        private String partition;
         private List<String> tableNamesToVisit;
 
         public Builder tableNamePrefix(String tableNamePrefix) {
@@ -82,6 +138,131 @@ public final class MigrationParams {
             return this;
         }
 
+        public Builder encoderThreads(Integer encoderThreads) {
+            this.encoderThreads = encoderThreads;
+            return this;
+        }
+
+        public Builder chunkPlanner(String chunkPlanner) {
+            this.chunkPlanner = chunkPlanner;
+            return this;
+        }
+
+        public Builder resume(Boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        public Builder compression(OutputCompression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public Builder compressionThreads(Integer compressionThreads) {
+            this.compressionThreads = compressionThreads;
+            return this;
+        }
+
+        public Builder outputFormat(OutputFormat outputFormat) {
+            this.outputFormat = outputFormat;
+            return this;
+        }
+
+        public Builder progressInterval(Integer progressInterval) {
+            this.progressInterval = progressInterval;
+            return this;
+        }
+
+        public Builder planThreads(Integer planThreads) {
+            this.planThreads = planThreads;
+            return this;
+        }
+
+        public Builder poolSize(Integer poolSize) {
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        public Builder changeColumn(String changeColumn) {
+            this.changeColumn = changeColumn;
+            return this;
+        }
+
+        public Builder stateFile(String stateFile) {
+            this.stateFile = stateFile;
+            return this;
+        }
+
+        public Builder pageSize(Integer pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        public Builder fanInFiles(Integer fanInFiles) {
+            this.fanInFiles = fanInFiles;
+            return this;
+        }
+
+        public Builder maxFileSizeMb(Integer maxFileSizeMb) {
+            this.maxFileSizeMb = maxFileSizeMb;
+            return this;
+        }
+
+        public Builder adaptiveConcurrency(Boolean adaptiveConcurrency) {
+            this.adaptiveConcurrency = adaptiveConcurrency;
+            return this;
+        }
+
+        public Builder maxRowsPerSecond(Integer maxRowsPerSecond) {
+            this.maxRowsPerSecond = maxRowsPerSecond;
+            return this;
+        }
+
+        public Builder maxThreadsPerHost(Integer maxThreadsPerHost) {
+            this.maxThreadsPerHost = maxThreadsPerHost;
+            return this;
+        }
+
+        public Builder workerId(String workerId) {
+            this.workerId = workerId;
+            return this;
+        }
+
+        public Builder leaseSeconds(Integer leaseSeconds) {
+            this.leaseSeconds = leaseSeconds;
+            return this;
+        }
+
+        public Builder streamTo(String streamTo) {
+            this.streamTo = streamTo;
+            return this;
+        }
+
+        public Builder columns(String columns) {
+            this.columns = columns;
+            return this;
+        }
+
+        public Builder projectionFile(String projectionFile) {
+            this.projectionFile = projectionFile;
+            return this;
+        }
+
+        public Builder filter(String filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public Builder hints(String hints) {
+            this.hints = hints;
+            return this;
+        }
+
+        public Builder partition(String partition) {
+            this.partition = partition;
+            return this;
+        }
+
         public MigrationParams build() {
             processNullParams();
             buildTableNamesToVisit();
@@ -95,6 +276,31 @@ public final class MigrationParams {
                     minSubsId,
                     maxSubsId,
                     fetchSize,
+                    encoderThreads,
+                    chunkPlanner,
+                    resume,
+                    compression,
+                    compressionThreads,
+                    outputFormat,
+                    progressInterval,
+                    planThreads,
+                    poolSize,
+                    changeColumn,
+                    stateFile,
+                    pageSize,
+                    fanInFiles,
+                    maxFileSizeMb,
+                    adaptiveConcurrency,
+                    maxRowsPerSecond,
+                    maxThreadsPerHost,
+                    workerId,
+                    leaseSeconds,
+                    streamTo,
+                    columns,
+                    projectionFile,
+                    filter,
+                    hints,
+                    partition,
                     tableNamesToVisit);
         }
 
@@ -111,6 +317,128 @@ public final class MigrationParams {
                 this.fetchSize = DEFAULT_FETCH_SIZE;
                 log.info("Param fetchSize is not specified. Default value: {}", fetchSize);
             }
+            if (encoderThreads == null) {
+                this.encoderThreads = 0;
+                log.info("Param encoderThreads is not specified. Rows are fetched, encoded and written by one thread");
+            }
+            if (chunkPlanner == null) {
+                this.chunkPlanner = UniformChunkPlanner.NAME;
+                log.info("Param chunkPlanner is not specified. Default value: {}", chunkPlanner);
+            }
+            if (resume == null) {
+                this.resume = false;
+                log.info("Param resume is not specified. Default value: {}", resume);
+            }
+            if (compression == null) {
+                this.compression = OutputCompression.NONE;
+                log.info("Param compression is not specified. Default value: {}", compression);
+            }
+            if (compressionThreads == null) {
+                // Cores which are not taken by the migration threads
+                this.compressionThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / numThreads);
+                log.info("Param compressionThreads is not specified. Default value: {}", compressionThreads);
+            }
+            if (outputFormat == null) {
+                this.outputFormat = OutputFormat.CSV;
+                log.info("Param outputFormat is not specified. Default value: {}", outputFormat);
+            }
+            if (progressInterval == null) {
+                this.progressInterval = DEFAULT_PROGRESS_INTERVAL;
+                log.info("Param progressInterval is not specified. Default value: {} seconds", progressInterval);
+            }
+            if (planThreads == null) {
+                this.planThreads = DEFAULT_PLAN_THREADS;
+                log.info("Param planThreads is not specified. Default value: {}", planThreads);
+            }
+            if (poolSize == null) {
+                // Connections of the planners besides the ones of the tasks, tables are planned while tasks run
+                this.poolSize = numThreads + planThreads;
+                log.info("Param poolSize is not specified. Default value: {}", poolSize);
+            }
+            if (changeColumn == null) {
+                log.info("Param changeColumn is not specified. Tables are exported in full");
+            }
+            if (stateFile == null && changeColumn != null) {
+                this.stateFile = outputDir + HighWaterMarkStore.FILE_NAME;
+                log.info("Param stateFile is not specified. Default value: {}", stateFile);
+            }
+            if (pageSize == null) {
+                this.pageSize = 0;
+                log.info("Param pageSize is not specified. Chunks are read in slices of equal SUBS_SUBS_ID ranges");
+            }
+            if (fanInFiles == null) {
+                this.fanInFiles = 0;
+                log.info("Param fanInFiles is not specified. Every task writes its own files");
+            }
+            if (maxFileSizeMb == null && fanInFiles > 0) {
+                this.maxFileSizeMb = DEFAULT_MAX_FILE_SIZE_MB;
+                log.info("Param maxFileSizeMb is not specified. Default value: {} MB", maxFileSizeMb);
+            }
+            if (fanInFiles > 0 && outputFormat == OutputFormat.PARQUET) {
+                throw new RuntimeException("Param fanInFiles is supported only for csv output");
+            }
+            if (fanInFiles > 0 && resume) {
+                // Rows of an unfinished task are already in the shared files and can't be cut out
+                throw new RuntimeException("A run with param fanInFiles can't be resumed");
+            }
+            if (adaptiveConcurrency == null) {
+                this.adaptiveConcurrency = false;
+                log.info("Param adaptiveConcurrency is not specified. Default value: {}", adaptiveConcurrency);
+            }
+            if (maxRowsPerSecond == null) {
+                this.maxRowsPerSecond = 0;
+                log.info("Param maxRowsPerSecond is not specified. Rows read from a shard are not limited");
+            }
+            if (maxThreadsPerHost == null) {
+                this.maxThreadsPerHost = 0;
+                log.info("Param maxThreadsPerHost is not specified. Tasks of a host are limited by its pool only");
+            }
+            if (workerId == null) {
+                log.info("Param workerId is not specified. Tables are not shared with other workers");
+            }
+            if (leaseSeconds == null && workerId != null) {
+                this.leaseSeconds = DEFAULT_LEASE_SECONDS;
+                log.info("Param leaseSeconds is not specified. Default value: {} seconds", leaseSeconds);
+            }
+            if (streamTo == null) {
+                log.info("Param streamTo is not specified. Rows are written to files");
+            }
+            if (columns == null) {
+                log.info("Param columns is not specified. All the columns are exported");
+            }
+            if (projectionFile == null) {
+                log.info("Param projectionFile is not specified. Every table is exported with the same columns");
+            }
+            if (filter == null) {
+                log.info("Param filter is not specified. All the rows are exported");
+            }
+            if (hints == null) {
+                log.info("Param hints is not specified. Oracle chooses the plan of the queries");
+            }
+            if (partition == null) {
+                log.info("Param partition is not specified. The queries read the whole tables");
+            }
+            if (streamTo != null && (outputFormat != OutputFormat.CSV || compression != OutputCompression.NONE)) {
+                throw new RuntimeException("Param streamTo is supported only for uncompressed csv output");
+            }
+            if (streamTo != null && (fanInFiles > 0 || workerId != null)) {
+                throw new RuntimeException("Param streamTo is not supported with params fanInFiles and workerId");
+            }
+            if (streamTo != null && resume) {
+                // Rows of an unfinished task are already taken by the consumer
+                throw new RuntimeException("A run with param streamTo can't be resumed");
+            }
+            if (workerId != null && resume) {
+                // A worker which is started again takes its tables back through their leases
+                throw new RuntimeException("A run with param workerId can't be resumed");
+            }
+            if (workerId != null && fanInFiles > 0) {
+                throw new RuntimeException("Param fanInFiles is not supported with param workerId");
+            }
+            if (workerId != null && changeColumn != null) {
+                // The high water marks of all the workers would be written to one state file
+                throw new RuntimeException("Param changeColumn is not supported with param workerId");
+            }
             if (minSubsId == null) {
                 log.info("Param minSubsId is not specified. Using numTableChunks instead");
             }
@@ -184,6 +512,48 @@ public final class MigrationParams {
         return new Builder();
     }
 
+    /**
+     * Params of a worker for the tables it has leased, written to its own output directory
+     */
+    public MigrationParams forLeasedTables(String workerOutputDir, List<String> leasedTableNames) {
+        return new MigrationParams(
+                tableNamePrefix,
+                shards,
+                partitions,
+                numThreads,
+                numTableChunks,
+                workerOutputDir,
+                minSubsId,
+                maxSubsId,
+                fetchSize,
+                encoderThreads,
+                chunkPlanner,
+                resume,
+                compression,
+                compressionThreads,
+                outputFormat,
+                progressInterval,
+                planThreads,
+                poolSize,
+                changeColumn,
+                stateFile,
+                pageSize,
+                fanInFiles,
+                maxFileSizeMb,
+                adaptiveConcurrency,
+                maxRowsPerSecond,
+                maxThreadsPerHost,
+                workerId,
+                leaseSeconds,
+                streamTo,
+                columns,
+                projectionFile,
+                filter,
+                hints,
+                partition,
+                leasedTableNames);
+    }
+
     private MigrationParams(
             String tableNamePrefix,
             String shards,
@@ -194,6 +564,31 @@ public final class MigrationParams {
             BigDecimal minSubsId,
             BigDecimal maxSubsId,
             Integer fetchSize,
+            Integer encoderThreads,
+            String chunkPlanner,
+            Boolean resume,
+            OutputCompression compression,
+            Integer compressionThreads,
+            OutputFormat outputFormat,
+            Integer progressInterval,
+            Integer planThreads,
+            Integer poolSize,
+            String changeColumn,
+            String stateFile,
+            Integer pageSize,
+            Integer fanInFiles,
+            Integer maxFileSizeMb,
+            Boolean adaptiveConcurrency,
+            Integer maxRowsPerSecond,
+            Integer maxThreadsPerHost,
+            String workerId,
+            Integer leaseSeconds,
+            String streamTo,
+            String columns,
+            String projectionFile,
+            String filter,
+            String hints,
+            String partition,
             List<String> tableNamesToVisit) {
         this.tableNamePrefix = tableNamePrefix;
         this.shards = shards;
@@ -204,6 +599,31 @@ public final class MigrationParams {
         this.minSubsId = minSubsId;
         this.maxSubsId = maxSubsId;
         this.fetchSize = fetchSize;
+        this.encoderThreads = encoderThreads;
+        this.chunkPlanner = chunkPlanner;
+        this.resume = resume;
+        this.compression = compression;
+        this.compressionThreads = compressionThreads;
+        this.outputFormat = outputFormat;
+        this.progressInterval = progressInterval;
+        this.planThreads = planThreads;
+        this.poolSize = poolSize;
+        this.changeColumn = changeColumn;
+        this.stateFile = stateFile;
+        this.pageSize = pageSize;
+        this.fanInFiles = fanInFiles;
+        this.maxFileSizeMb = maxFileSizeMb;
+        this.adaptiveConcurrency = adaptiveConcurrency;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.maxThreadsPerHost = maxThreadsPerHost;
+        this.workerId = workerId;
+        this.leaseSeconds = leaseSeconds;
+        this.streamTo = streamTo;
+        this.columns = columns;
+        this.projectionFile = projectionFile;
+        this.filter = filter;
+        this.hints = hints;
+        this.partition = partition;
         this.tableNamesToVisit = tableNamesToVisit;
     }
 }
@@ -0,0 +1,357 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import com.pasha.oracleToCsvDataMigration.config.ShardRouter;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs migration tasks on a fixed number of workers, largest tasks first.
+ * <p>
+ * Tasks are submitted while the workers run, as soon as their tables are planned,
+ * and the run ends when all the tasks are submitted and finished.
+ * <p>
+ * A worker which finds no pending task splits the largest running task
+ * and takes over the part of its range which is not read yet, so a few big tables
+ * don't keep running on one thread each while the rest of the workers are idle.
+ * <p>
+ * Tables of different shards can be on different hosts, see {@link ShardRouter}. A host runs
+ * as many tasks as its pool has room for at most, a worker takes the largest task of a host which has room,
+ * so the workers are spread over the hosts and a slow host does not take all of them.
+ * <p>
+ * With a table feed, a worker which finds no pending task takes the next table from the feed and plans it
+ * before it splits a running task, and the feed is told when the last task of the table is finished.
+ * The run goes on until the feed is finished
+ */
+@Slf4j
+public final class MigrationScheduler {
+
+    /**
+     * How often an idle worker retries to split running tasks
+     */
+    private static final long STEAL_RETRY_MILLIS = 1_000;
+
+    private static final Comparator<IMigrationTask> LARGEST_FIRST = Comparator
+            .comparingLong(IMigrationTask::getRemainingRowCount).reversed()
+            .thenComparingInt(IMigrationTask::getTaskId);
+
+    private final int numWorkers;
+    private final MigrationMetrics metrics;
+    private final ShardRouter shardRouter;
+    private final Map<ShardRouter.Host, Integer> maxTasksPerHost;
+    private final TreeSet<IMigrationTask> pendingTasks = new TreeSet<>(LARGEST_FIRST);
+    private final Set<IMigrationTask> runningTasks = new HashSet<>();
+    private final Map<ShardRouter.Host, Integer> countRunningTasksPerHost = new HashMap<>();
+    private final List<DiscountMigrationTaskResult> results = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * Unfinished tasks of the tables taken from the feed, including the ones split off
+     */
+    private final Map<String, Integer> countUnfinishedTasksPerTable = new HashMap<>();
+    private ITableFeed tableFeed;
+    private long claimRetryMillis;
+    private Function<String, List<IMigrationTask>> tablePlanner;
+    private int nextTaskId;
+    private boolean allSubmitted;
+    /**
+     * A worker is taking a table from the feed
+     */
+    private boolean claiming;
+    /**
+     * A table is not taken from the feed before that time, after the feed had none
+     */
+    private long nextClaimMillis;
+    /**
+     * The feed had no table and was finished when it was last asked, the feed is asked without the lock
+     */
+    private boolean feedFinished;
+    private Throwable failure;
+
+    /**
+     * @param firstTaskId the first id which is not taken by the tasks of the run
+     */
+    public MigrationScheduler(
+            int numWorkers,
+            int firstTaskId,
+            ShardRouter shardRouter,
+            Map<ShardRouter.Host, Integer> maxTasksPerHost,
+            MigrationMetrics metrics) {
+        this.numWorkers = numWorkers;
+        this.nextTaskId = firstTaskId;
+        this.shardRouter = shardRouter;
+        this.maxTasksPerHost = maxTasksPerHost;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Takes ids for new tasks. The ids are shared with the tasks split off during the run
+     *
+     * @return the first of {@code count} consecutive ids
+     */
+    public synchronized int allocateTaskIds(int count) {
+        final int firstTaskId = nextTaskId;
+        nextTaskId += count;
+        return firstTaskId;
+    }
+
+    /**
+     * Adds tasks to run, before or during {@link #run()}
+     */
+    public synchronized void submit(Collection<? extends IMigrationTask> tasks) {
+        pendingTasks.addAll(tasks);
+        notifyAll();
+    }
+
+    /**
+     * Takes the tables from the feed while the run goes on, to be called before {@link #run()}
+     *
+     * @param claimRetryMillis time before the feed is asked again after it had no table
+     * @param tablePlanner     plans the tasks of a table
+     */
+    public synchronized void feed(
+            ITableFeed tableFeed,
+            long claimRetryMillis,
+            Function<String, List<IMigrationTask>> tablePlanner) {
+        this.tableFeed = tableFeed;
+        this.claimRetryMillis = claimRetryMillis;
+        this.tablePlanner = tablePlanner;
+    }
+
+    /**
+     * No more tasks are going to be submitted, the run ends when the submitted ones are finished
+     */
+    public synchronized void allSubmitted() {
+        allSubmitted = true;
+        notifyAll();
+    }
+
+    /**
+     * Stops the run: no more tasks are started and {@link #run()} throws when the running ones are finished
+     */
+    public synchronized void fail(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Runs all the tasks and waits for them to finish
+     *
+     * @return results of all the tasks, including the ones split off during the run
+     */
+    public List<DiscountMigrationTaskResult> run() {
+        final ExecutorService workers = Executors.newFixedThreadPool(numWorkers);
+        for (int i = 0; i < numWorkers; ++i) {
+            workers.submit(this::work);
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+        }
+        return results;
+    }
+
+    private void work() {
+        IMigrationTask task;
+        while ((task = nextTask()) != null) {
+            metrics.taskStarted();
+            boolean tableFinished;
+            try {
+                results.add(task.call());
+            } catch (Throwable e) {
+                log.error("Task {} failed", task.getTaskId(), e);
+                fail(e);
+                return;
+            } finally {
+                metrics.taskFinished();
+                tableFinished = finish(task);
+            }
+            if (tableFinished) {
+                completeTable(task.getTableName());
+            }
+        }
+    }
+
+    /**
+     * @return next task to run, or null when there is nothing left to do
+     */
+    private IMigrationTask nextTask() {
+        while (true) {
+            synchronized (this) {
+                if (failure != null) {
+                    return null;
+                }
+                IMigrationTask task = takePendingTask();
+                if (task == null && !startClaim()) {
+                    task = splitRunningTask();
+                    if (task == null) {
+                        if (runningTasks.isEmpty() && allSubmitted && !claiming
+                                && (tableFeed == null || feedFinished)) {
+                            return null;
+                        }
+                        try {
+                            wait(STEAL_RETRY_MILLIS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return null;
+                        }
+                        continue;
+                    }
+                }
+                if (task != null) {
+                    runningTasks.add(task);
+                    countRunningTasksPerHost.merge(shardRouter.getHost(task.getTableName()), 1, Integer::sum);
+                    return task;
+                }
+            }
+            // The feed is asked and the table is planned without the lock, the other workers go on meanwhile,
+            // and the state is checked again when the lock is taken
+            claimTable();
+        }
+    }
+
+    /**
+     * @return whether this worker is to take a table from the feed
+     */
+    private boolean startClaim() {
+        if (tableFeed == null || claiming || System.currentTimeMillis() < nextClaimMillis) {
+            return false;
+        }
+        claiming = true;
+        return true;
+    }
+
+    private void claimTable() {
+        String tableName = null;
+        boolean finished = false;
+        try {
+            tableName = tableFeed.claim();
+            if (tableName == null) {
+                finished = tableFeed.isFinished();
+            } else {
+                final List<IMigrationTask> tasks = tablePlanner.apply(tableName);
+                synchronized (this) {
+                    if (!tasks.isEmpty()) {
+                        countUnfinishedTasksPerTable.put(tableName, tasks.size());
+                        pendingTasks.addAll(tasks);
+                    }
+                }
+                if (tasks.isEmpty()) {
+                    completeTable(tableName);
+                }
+            }
+        } catch (Throwable e) {
+            log.error("Taking a table from the feed failed, table {}", tableName, e);
+            fail(e);
+        } finally {
+            synchronized (this) {
+                claiming = false;
+                if (tableName == null) {
+                    feedFinished = finished;
+                    nextClaimMillis = System.currentTimeMillis() + claimRetryMillis;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void completeTable(String tableName) {
+        try {
+            tableFeed.complete(tableName);
+        } catch (Throwable e) {
+            log.error("Table {} can't be completed", tableName, e);
+            fail(e);
+            return;
+        }
+        synchronized (this) {
+            // The feed may be finished now, it is asked again without waiting for the retry
+            nextClaimMillis = 0;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return the largest pending task of a host which has room for it, or null
+     */
+    private IMigrationTask takePendingTask() {
+        final Iterator<IMigrationTask> tasks = pendingTasks.iterator();
+        while (tasks.hasNext()) {
+            final IMigrationTask task = tasks.next();
+            if (hasRoom(task)) {
+                tasks.remove();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasRoom(IMigrationTask task) {
+        final ShardRouter.Host host = shardRouter.getHost(task.getTableName());
+        final Integer countRunningTasks = countRunningTasksPerHost.get(host);
+        return countRunningTasks == null || countRunningTasks < maxTasksPerHost.get(host);
+    }
+
+    private IMigrationTask splitRunningTask() {
+        final List<IMigrationTask> candidates = new ArrayList<>(runningTasks);
+        candidates.sort(LARGEST_FIRST);
+        for (IMigrationTask candidate : candidates) {
+            if (!hasRoom(candidate)) {
+                continue;
+            }
+            final IMigrationTask stolenTask = candidate.trySplit(nextTaskId);
+            if (stolenTask != null) {
+                ++nextTaskId;
+                countUnfinishedTasksPerTable.computeIfPresent(
+                        stolenTask.getTableName(), (tableName, count) -> count + 1);
+                metrics.tasksPlanned(1, 0);
+                log.info("Task {} is split, task {} takes over ~{} rows",
+                        candidate.getTaskId(), stolenTask.getTaskId(), stolenTask.getRemainingRowCount());
+                return stolenTask;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the task is the last one of a table taken from the feed, and the run has not failed
+     */
+    private synchronized boolean finish(IMigrationTask task) {
+        runningTasks.remove(task);
+        countRunningTasksPerHost.merge(shardRouter.getHost(task.getTableName()), -1, Integer::sum);
+        notifyAll();
+        final Integer countUnfinishedTasks = countUnfinishedTasksPerTable.get(task.getTableName());
+        if (countUnfinishedTasks == null || failure != null) {
+            return false;
+        }
+        if (countUnfinishedTasks > 1) {
+            countUnfinishedTasksPerTable.put(task.getTableName(), countUnfinishedTasks - 1);
+            return false;
+        }
+        countUnfinishedTasksPerTable.remove(task.getTableName());
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of the output files. Every format compresses a block into a self-contained
+ * member or frame, and concatenated members are a valid stream of that format,
+ * so blocks are compressed independently by {@link BlockCompressionChannel}
+ */
+public enum OutputCompression {
+
+    NONE("") {
+        @Override
+        public byte[] compress(byte[] block, int length) {
+            return Arrays.copyOf(block, length);
+        }
+    },
+
+    GZIP(".gz") {
+        @Override
+        public byte[] compress(byte[] block, int length) {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed, GZIP_BUFFER_SIZE)) {
+                gzipOutputStream.write(block, 0, length);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return compressed.toByteArray();
+        }
+    },
+
+    ZSTD(".zst") {
+        @Override
+        public byte[] compress(byte[] block, int length) {
+            return Zstd.compress(length == block.length ? block : Arrays.copyOf(block, length), ZSTD_LEVEL);
+        }
+    };
+
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+    private static final int ZSTD_LEVEL = 3;
+
+    private final String fileExtension;
+
+    OutputCompression(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Compresses the first {@code length} bytes of the block into a standalone member
+     */
+    public abstract byte[] compress(byte[] block, int length);
+
+    public static OutputCompression fromName(String name) {
+        for (OutputCompression compression : values()) {
+            if (compression.name().equalsIgnoreCase(name)) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression: " + name);
+    }
+}
@@ -0,0 +1,171 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Output file which is written under a temporary name and gets its final name only when it is complete.
+ * <p>
+ * The bytes are checksummed as they are written. On commit the file is forced to disk and renamed atomically,
+ * then a sidecar manifest with the number of rows, the size and the CRC32 of the file is written next to it,
+ * so a loader can take the file as soon as its manifest appears. A file of a failed task stays under
+ * the temporary name. Only a continued file is read back, to checksum the part written before the resume.
+ * <p>
+ * Not thread safe
+ */
+public final class OutputFile implements WritableByteChannel {
+
+    public static final String IN_PROGRESS_SUFFIX = ".inprogress";
+    public static final String MANIFEST_SUFFIX = ".manifest";
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final Path path;
+    private final Path tempPath;
+    private final FileChannel fileChannel;
+    private final CRC32 checksum = new CRC32();
+
+    private OutputFile(Path path, Path tempPath, FileChannel fileChannel) {
+        this.path = path;
+        this.tempPath = tempPath;
+        this.fileChannel = fileChannel;
+    }
+
+    /**
+     * Opens the temporary file, continuing it from {@code offset}. Everything after the offset is discarded
+     *
+     * @param offset 0 to start a new file
+     */
+    public static OutputFile open(String path, long offset) {
+        final Path tempPath = Paths.get(path + IN_PROGRESS_SUFFIX);
+        try {
+            final FileChannel fileChannel = FileChannel.open(tempPath,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            final OutputFile outputFile = new OutputFile(Paths.get(path), tempPath, fileChannel);
+            fileChannel.truncate(offset);
+            outputFile.checksumExistingBytes(offset);
+            fileChannel.position(offset);
+            return outputFile;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return whether the temporary file has the {@code offset} bytes to be continued from
+     */
+    public static boolean canContinue(String path, long offset) {
+        final Path tempPath = Paths.get(path + IN_PROGRESS_SUFFIX);
+        try {
+            return Files.exists(tempPath) && Files.size(tempPath) >= offset;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        final ByteBuffer writtenBytes = src.duplicate();
+        final int written = fileChannel.write(src);
+        writtenBytes.limit(writtenBytes.position() + written);
+        checksum.update(writtenBytes);
+        return written;
+    }
+
+    /**
+     * Forces the written bytes to disk
+     *
+     * @return size of the file
+     */
+    public long force() {
+        try {
+            fileChannel.force(false);
+            return fileChannel.position();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Closes the file, if it is not closed yet, and moves it to its final name
+     *
+     * @param rowCount number of rows in the file, written to the manifest
+     */
+    public void commit(long rowCount) {
+        try {
+            close();
+            final long size = Files.size(tempPath);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeManifest(rowCount, size);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return fileChannel.isOpen();
+    }
+
+    /**
+     * Forces the file to disk and closes it
+     */
+    @Override
+    public void close() throws IOException {
+        if (!fileChannel.isOpen()) {
+            return;
+        }
+        try {
+            fileChannel.force(false);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    private void checksumExistingBytes(long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - position));
+            final int read = fileChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + tempPath + " at " + position);
+            }
+            buffer.flip();
+            checksum.update(buffer);
+            position += read;
+        }
+    }
+
+    private void writeManifest(long rowCount, long size) throws IOException {
+        final Properties manifest = new Properties();
+        manifest.setProperty("file", path.getFileName().toString());
+        manifest.setProperty("rows", Long.toString(rowCount));
+        manifest.setProperty("bytes", Long.toString(size));
+        manifest.setProperty("crc32", String.format("%08x", checksum.getValue()));
+        final Path manifestPath = Paths.get(path + MANIFEST_SUFFIX);
+        final Path tempManifestPath = Paths.get(manifestPath + TEMP_FILE_SUFFIX);
+        try (Writer writer = Files.newBufferedWriter(tempManifestPath, StandardCharsets.UTF_8)) {
+            manifest.store(writer, null);
+        }
+        try (FileChannel channel = FileChannel.open(tempManifestPath, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempManifestPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,23 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+/**
+ * Format of the output files
+ */
+public enum OutputFormat {
+
+    CSV,
+
+    /**
+     * Typed columnar files, see {@link com.pasha.oracleToCsvDataMigration.parquet.ParquetRowSink}
+     */
+    PARQUET;
+
+    public static OutputFormat fromName(String name) {
+        for (OutputFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format: " + name);
+    }
+}
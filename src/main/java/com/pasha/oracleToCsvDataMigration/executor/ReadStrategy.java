@@ -0,0 +1,79 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import java.util.regex.Pattern;
+
+/**
+ * How the queries of the tasks read the tables, so the access paths can be compared run by run.
+ * <p>
+ * {@code hints} are the optimizer hints of the queries, the table is aliased {@value #TABLE_ALIAS} in them,
+ * e.g. {@code FULL(D)}, {@code FULL(D) PARALLEL(D 4)} or {@code INDEX(D (SUBS_SUBS_ID))}.
+ * A full scan reads a whole chunk with multiblock reads instead of a block per index entry,
+ * and with PARALLEL every running query takes its own parallel servers.
+ * {@code partition} is a partition extended name, {@code PARTITION (<name>)} or {@code SUBPARTITION (<name>)},
+ * which is read from every table instead of the whole table.
+ * <p>
+ * Settings of the sessions, e.g. serial direct path reads, are made on every pooled connection
+ * by {@code oracle.sessionInitSql}
+ */
+public final class ReadStrategy {
+
+    public static final String TABLE_ALIAS = "D";
+
+    private static final String NONE = "none";
+    private static final Pattern PARTITION_EXTENDED_NAME = Pattern.compile(
+            "(SUB)?PARTITION\\s*\\(\\s*([A-Za-z][A-Za-z0-9_$#]*|\"[^\"]+\")\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Empty for the plan chosen by Oracle
+     */
+    private final String hintComment;
+    /**
+     * Table, partition and alias of the FROM clause, the table name is put in place of %s
+     */
+    private final String fromTemplate;
+    private final String description;
+
+    private ReadStrategy(String hintComment, String fromTemplate, String description) {
+        this.hintComment = hintComment;
+        this.fromTemplate = fromTemplate;
+        this.description = description;
+    }
+
+    /**
+     * Checks the hints and the partition extended name
+     */
+    public static ReadStrategy of(MigrationParams params) {
+        String hints = params.getHints() == null ? "" : params.getHints().trim();
+        if (hints.contains("*/") || hints.contains("/*")) {
+            throw new RuntimeException("Param hints must not contain comments: " + hints);
+        }
+        String partition = params.getPartition() == null ? "" : params.getPartition().trim();
+        if (!partition.isEmpty() && !PARTITION_EXTENDED_NAME.matcher(partition).matches()) {
+            throw new RuntimeException(
+                    "Wrong param partition, expected PARTITION (<name>) or SUBPARTITION (<name>): " + partition);
+        }
+        return new ReadStrategy(
+                hints.isEmpty() ? "" : "/*+ " + hints + " */ ",
+                "%s " + (partition.isEmpty() ? "" : partition + " ") + TABLE_ALIAS,
+                "hints " + (hints.isEmpty() ? NONE : hints) + ", partition " + (partition.isEmpty() ? NONE : partition));
+    }
+
+    /**
+     * @return hint comment to be put right after SELECT, empty if there are no hints
+     */
+    public String getHintComment() {
+        return hintComment;
+    }
+
+    /**
+     * @return table expression of the FROM clause of the table
+     */
+    public String getFrom(String tableName) {
+        return String.format(fromTemplate, tableName);
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -1,78 +1,110 @@
 package com.pasha.oracleToCsvDataMigration.executor;
 
+import com.pasha.oracleToCsvDataMigration.checkpoint.CheckpointJournal;
+import com.pasha.oracleToCsvDataMigration.incremental.DeltaExport;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import com.pasha.oracleToCsvDataMigration.throttle.QueryThrottle;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
 
 @Slf4j
 public final class SimpleDiscountMigrationTask
         extends AbstractMigrationTask
-        implements Callable<DiscountMigrationTaskResult> {
+        implements IMigrationTask {
 
-    private static final String SELECT_ALL_QUERY_TEMPLATE = "SELECT * FROM %s";
+    private static final String SELECT_ALL_QUERY_TEMPLATE = "SELECT %s%s FROM %s";
+    private static final String WHERE_TEMPLATE = " WHERE (%s)";
+    private static final String AND_TEMPLATE = " AND (%s)";
     private static final String CSV_EXTENSION = ".csv";
     public static final String DISCOUNTS = "DISCOUNTS_";
 
+    @Getter
     private final int taskId;
+    private final long estimatedRowCount;
+    @Getter
     private final String tableName;
-    private final String outputDir;
-    private JdbcTemplate jdbcTemplate;
-
+    private final MigrationParams params;
+    private final CheckpointJournal journal;
+    private final MigrationMetrics metrics;
+    private final DeltaExport delta;
+    private final TableProjection projection;
     /**
-     * To synchronize all submitted tasks
+     * Output shared by the tasks, null when every task writes its own file
      */
-    private final CountDownLatch countDownLatch;
+    private final ISharedOutput sharedOutput;
+    private final QueryThrottle throttle;
+    private JdbcTemplate jdbcTemplate;
 
     public SimpleDiscountMigrationTask(
             final String tableName,
             final int taskId,
-            CountDownLatch countDownLatch,
+            final long estimatedRowCount,
             JdbcTemplate template,
-            String outputDir) {
+            MigrationParams params,
+            CheckpointJournal journal,
+            MigrationMetrics metrics,
+            DeltaExport delta,
+            TableProjection projection,
+            ISharedOutput sharedOutput,
+            QueryThrottle throttle) {
         this.tableName = tableName;
         this.taskId = taskId;
-        this.countDownLatch = countDownLatch;
+        this.estimatedRowCount = estimatedRowCount;
         this.jdbcTemplate = template;
-        this.outputDir = outputDir;
+        this.params = params;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.delta = delta;
+        this.projection = projection;
+        this.sharedOutput = sharedOutput;
+        this.throttle = throttle;
     }
 
     @Override
     public DiscountMigrationTaskResult call() {
-
-        // Waiting for submission of all tasks
-        try {
-            countDownLatch.await();
-        } catch (InterruptedException e) {
-            log.error("Error while waiting for tasks submission");
-            throw new RuntimeException(e);
-        }
-
         log.info("Start TASK {}. Selecting all rows from {}", taskId, tableName);
-        String query = String.format(SELECT_ALL_QUERY_TEMPLATE, tableName);
-        SqlRowSet sqlRowSet = jdbcTemplate.queryForRowSet(query);
-        final String csvFileName = outputDir + DISCOUNTS + tableName + CSV_EXTENSION;
-        final DiscountMigrationTaskResult result = writeSqlRowSetToCsv(sqlRowSet, csvFileName);
-        log.info("TASK {} finished. Migrated {} rows", taskId, result.getNumberOfMigratedRows());
-        return result;
-    }
-
-    private DiscountMigrationTaskResult writeSqlRowSetToCsv(SqlRowSet sqlRowSet, String csvFileName) {
-        final String[] columnNames = sqlRowSet.getMetaData().getColumnNames();
-        int columnCount = sqlRowSet.getMetaData().getColumnCount();
-        final CsvWriter csvWriter = new CsvWriter(csvFileName);
-        csvWriter.writeHeader(columnNames);
+        final long startNanos = System.nanoTime();
+        final ReadStrategy readStrategy = ReadStrategy.of(params);
+        String query = String.format(SELECT_ALL_QUERY_TEMPLATE,
+                readStrategy.getHintComment(), projection.getSelectList(tableName), readStrategy.getFrom(tableName));
+        final String deltaCondition = delta.getCondition(tableName);
+        if (deltaCondition != null) {
+            query += String.format(WHERE_TEMPLATE, deltaCondition);
+        }
+        if (projection.getFilter() != null) {
+            query += String.format(deltaCondition == null ? WHERE_TEMPLATE : AND_TEMPLATE, projection.getFilter());
+        }
+        final String fileName = params.getOutputDir() + DISCOUNTS + tableName + delta.getFileNameSuffix(tableName) +
+                (params.getOutputFormat() == OutputFormat.CSV ? CSV_EXTENSION : "");
         long countMigratedRows = 0;
-        while (sqlRowSet.next()) {
-            List<Object> csvLine = createCsvLine(sqlRowSet, columnCount);
-            csvWriter.writeRecord(csvLine);
-            ++countMigratedRows;
+        final long bytesWritten;
+        final long fileBytesWritten;
+        try (IRowSink rowSink = sharedOutput != null ?
+                sharedOutput.openRowSink(tableName) :
+                openRowSink(fileName, 0, params, metrics)) {
+            throttle.acquire(tableName);
+            final long queryStartNanos = System.nanoTime();
+            try {
+                countMigratedRows = rowSink.export(jdbcTemplate, query);
+            } finally {
+                throttle.release(tableName, System.nanoTime() - queryStartNanos, countMigratedRows);
+            }
+            metrics.addQuery(System.nanoTime() - queryStartNanos);
+            bytesWritten = rowSink.checkpoint();
+            fileBytesWritten = rowSink.getBytesWritten();
+            rowSink.commit(countMigratedRows);
         }
-        csvWriter.flush();
+        journal.taskDone(taskId, bytesWritten, countMigratedRows);
+        final DiscountMigrationTaskResult result = new DiscountMigrationTaskResult(this, countMigratedRows);
+        log.info("TASK {} finished. Migrated {} rows. {}. Read with {}", taskId, result.getNumberOfMigratedRows(),
+                formatSpeed(countMigratedRows, fileBytesWritten, startNanos), readStrategy);
+        return result;
+    }
 
-        return new DiscountMigrationTaskResult(this, countMigratedRows);
+    @Override
+    public long getRemainingRowCount() {
+        return estimatedRowCount;
     }
 }
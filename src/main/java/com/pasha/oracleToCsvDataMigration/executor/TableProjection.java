@@ -0,0 +1,138 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Columns and rows of the tables which are exported. The select list and the filter are put into
+ * the queries of the tasks, so the columns and rows which are not needed are neither sent over
+ * the network nor decoded and encoded.
+ * <p>
+ * The select list of a table is taken from the projection file, a properties file of
+ * {@code <table name>=<column>,<column>} lines, then from {@code columns}, and is {@code *} otherwise.
+ * The filter is an SQL condition on the rows of every table.
+ * <p>
+ * Keyset pages end by SUBS_SUBS_ID of the rows, so with {@code pageSize} every select list has to have it
+ */
+@Slf4j
+public final class TableProjection {
+
+    /**
+     * All the columns and rows of every table
+     */
+    public static final TableProjection ALL = new TableProjection(null, Collections.emptyMap(), null);
+
+    private static final String ALL_COLUMNS = "*";
+    private static final String COLUMN_DELIMITER = ",";
+    private static final String SELECT_LIST_DELIMITER = ", ";
+    /**
+     * Oracle identifier, plain or quoted
+     */
+    private static final Pattern COLUMN_NAME = Pattern.compile("[A-Za-z][A-Za-z0-9_$#]*|\"[^\"]+\"");
+
+    /**
+     * Null for all the columns
+     */
+    private final String defaultSelectList;
+    private final Map<String, String> tableSelectLists;
+    private final String filter;
+
+    private TableProjection(String defaultSelectList, Map<String, String> tableSelectLists, String filter) {
+        this.defaultSelectList = defaultSelectList;
+        this.tableSelectLists = tableSelectLists;
+        this.filter = filter;
+    }
+
+    /**
+     * Reads the projection file, if any, and checks the column names
+     */
+    public static TableProjection load(MigrationParams params) {
+        if (params.getColumns() == null && params.getProjectionFile() == null && params.getFilter() == null) {
+            return ALL;
+        }
+        final Map<String, String> tableSelectLists = new HashMap<>();
+        if (params.getProjectionFile() != null) {
+            final Properties projections = new Properties();
+            try (Reader reader = Files.newBufferedReader(Paths.get(params.getProjectionFile()), StandardCharsets.UTF_8)) {
+                projections.load(reader);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            for (String tableName : projections.stringPropertyNames()) {
+                if (!params.getTableNamesToVisit().contains(tableName)) {
+                    log.warn("Table {} of {} is not exported by the run", tableName, params.getProjectionFile());
+                }
+                tableSelectLists.put(tableName, toSelectList(projections.getProperty(tableName)));
+            }
+        }
+        final String defaultSelectList = params.getColumns() == null ? null : toSelectList(params.getColumns());
+        if (params.getPageSize() > 0) {
+            checkPageKey(defaultSelectList);
+            tableSelectLists.values().forEach(TableProjection::checkPageKey);
+        }
+        final String filter = params.getFilter() == null || params.getFilter().trim().isEmpty() ?
+                null :
+                params.getFilter().trim();
+        log.info("Tables are exported with columns {}, {} tables have their own columns. Filter: {}",
+                defaultSelectList == null ? ALL_COLUMNS : defaultSelectList, tableSelectLists.size(),
+                filter == null ? "none" : filter);
+        return new TableProjection(defaultSelectList, tableSelectLists, filter);
+    }
+
+    /**
+     * @return select list of the query of the table
+     */
+    public String getSelectList(String tableName) {
+        final String selectList = tableSelectLists.get(tableName);
+        if (selectList != null) {
+            return selectList;
+        }
+        return defaultSelectList == null ? ALL_COLUMNS : defaultSelectList;
+    }
+
+    /**
+     * @return SQL condition on the exported rows, null if all the rows are exported
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    private static void checkPageKey(String selectList) {
+        if (selectList == null) {
+            return;
+        }
+        for (String columnName : selectList.split(SELECT_LIST_DELIMITER)) {
+            if (columnName.equalsIgnoreCase(KeysetPage.KEY_COLUMN_NAME) ||
+                    columnName.equals('"' + KeysetPage.KEY_COLUMN_NAME + '"')) {
+                return;
+            }
+        }
+        throw new RuntimeException("Columns " + selectList + " have no " + KeysetPage.KEY_COLUMN_NAME +
+                ", keyset pages can't be read without it");
+    }
+
+    private static String toSelectList(String columns) {
+        final StringBuilder selectList = new StringBuilder();
+        for (String column : columns.split(COLUMN_DELIMITER)) {
+            final String columnName = column.trim();
+            if (!COLUMN_NAME.matcher(columnName).matches()) {
+                throw new RuntimeException("Wrong column name: '" + columnName + "' in " + columns);
+            }
+            if (selectList.length() > 0) {
+                selectList.append(SELECT_LIST_DELIMITER);
+            }
+            selectList.append(columnName);
+        }
+        return selectList.toString();
+    }
+}
@@ -0,0 +1,264 @@
+package com.pasha.oracleToCsvDataMigration.fanin;
+
+import com.pasha.oracleToCsvDataMigration.executor.CsvWriter;
+import com.pasha.oracleToCsvDataMigration.executor.IRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.ISharedOutput;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import com.pasha.oracleToCsvDataMigration.executor.OutputCompression;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Output files shared by all the tasks of a run, so many small tables don't end up in a file each.
+ * <p>
+ * There are {@code fanInFiles} files open at a time. A task takes a free one for every query and writes all
+ * the rows of the query to it, so the rows of one query are never mixed with other rows. When a file grows
+ * over {@code maxFileSizeMb} it is closed and the next part of it is started, the size is checked after
+ * every query, so a file exceeds it by one query at most.
+ * <p>
+ * Every query is recorded in the manifest: the file, the table, the SUBS_SUBS_ID range of a chunk slice
+ * and the number of rows. All the tables must have the same columns, the header is written once per file.
+ * <p>
+ * A full file is committed when it is rolled over, the last files and the manifest when the run is finished
+ */
+@Slf4j
+public final class FanInOutput implements ISharedOutput {
+
+    public static final String FILE_NAME_PREFIX = "DISCOUNTS_PART_";
+    public static final String MANIFEST_FILE_NAME = "DISCOUNTS_MANIFEST";
+
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String PART_NAME_FORMAT = "%03d_%05d";
+    private static final String[] MANIFEST_HEADER
+            = {"FILE_NAME", "TABLE_NAME", "FIRST_SUBS_ID", "LAST_SUBS_ID", "ROW_COUNT"};
+    private static final int BYTES_IN_MB = 1 << 20;
+
+    private final MigrationParams params;
+    private final MigrationMetrics metrics;
+    private final String fileNameSuffix;
+    private final long maxFileSize;
+    private final List<Lane> lanes;
+    private final BlockingQueue<Lane> freeLanes;
+    /**
+     * Guarded by this
+     */
+    private final CsvWriter manifest;
+    /**
+     * Columns of the first exported table, guarded by this
+     */
+    private String[] columnNames;
+    private int countFiles;
+    private long countManifestRecords;
+
+    private FanInOutput(MigrationParams params, MigrationMetrics metrics, String fileNameSuffix, CsvWriter manifest) {
+        this.params = params;
+        this.metrics = metrics;
+        this.fileNameSuffix = fileNameSuffix;
+        this.maxFileSize = (long) params.getMaxFileSizeMb() * BYTES_IN_MB;
+        this.manifest = manifest;
+        this.lanes = new ArrayList<>(params.getFanInFiles());
+        this.freeLanes = new ArrayBlockingQueue<>(params.getFanInFiles());
+        for (int i = 0; i < params.getFanInFiles(); ++i) {
+            final Lane lane = new Lane(i);
+            lanes.add(lane);
+            freeLanes.add(lane);
+        }
+    }
+
+    /**
+     * @param fileNameSuffix added to the names of the files and of the manifest, so they don't overwrite
+     *                       the files of a previous incremental run
+     */
+    public static FanInOutput open(MigrationParams params, MigrationMetrics metrics, String fileNameSuffix) {
+        final CsvWriter manifest = CsvWriter.open(
+                params.getOutputDir() + MANIFEST_FILE_NAME + fileNameSuffix + CSV_EXTENSION,
+                0,
+                OutputCompression.NONE,
+                1,
+                metrics);
+        manifest.writeHeader(MANIFEST_HEADER);
+        log.info("Rows of all tables are written to {} rolling files of {} MB, see {} for the content",
+                params.getFanInFiles(), params.getMaxFileSizeMb(), MANIFEST_FILE_NAME + fileNameSuffix + CSV_EXTENSION);
+        return new FanInOutput(params, metrics, fileNameSuffix, manifest);
+    }
+
+    /**
+     * Sink of a task which writes the rows of the table to the shared files
+     */
+    @Override
+    public IRowSink openRowSink(String tableName) {
+        return new FanInRowSink(this, tableName, params, metrics);
+    }
+
+    /**
+     * Commits the last files and the manifest, to be called when all the tasks are finished
+     */
+    @Override
+    public synchronized void commit() {
+        for (Lane lane : lanes) {
+            lane.commit();
+        }
+        manifest.commit(countManifestRecords);
+        log.info("{} files are written", countFiles);
+    }
+
+    /**
+     * Closes the files which are not committed, they stay under their temporary names
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            for (Lane lane : lanes) {
+                lane.close();
+            }
+        } finally {
+            manifest.close();
+        }
+    }
+
+    /**
+     * Checks the columns of a query before its rows are written
+     */
+    synchronized void checkColumns(String tableName, ResultSetMetaData metaData) throws SQLException {
+        final String[] queryColumnNames = new String[metaData.getColumnCount()];
+        for (int columnNumber = 1; columnNumber <= queryColumnNames.length; ++columnNumber) {
+            queryColumnNames[columnNumber - 1] = metaData.getColumnName(columnNumber);
+        }
+        if (columnNames == null) {
+            columnNames = queryColumnNames;
+        } else if (!Arrays.equals(columnNames, queryColumnNames)) {
+            throw new RuntimeException("Table " + tableName + " has columns " + Arrays.toString(queryColumnNames) +
+                    " and can't be written to the same files as the tables with " + Arrays.toString(columnNames));
+        }
+    }
+
+    /**
+     * Takes a free file, waiting for one if all of them are taken
+     */
+    Lane acquire() {
+        final Lane lane;
+        try {
+            lane = freeLanes.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        try {
+            lane.open();
+        } catch (RuntimeException e) {
+            freeLanes.add(lane);
+            throw e;
+        }
+        return lane;
+    }
+
+    /**
+     * Records the rows of a query written to the file
+     *
+     * @param range bind values of the query, the first and the last SUBS_SUBS_ID of a chunk slice
+     */
+    synchronized void record(Lane lane, String tableName, Object[] range, long countWrittenRows) {
+        manifest.writeField(lane.fileName);
+        manifest.writeField(tableName);
+        for (int i = 0; i < 2; ++i) {
+            if (i < range.length) {
+                manifest.writeAsciiField(toPlainString(range[i]));
+            } else {
+                manifest.writeEmptyField();
+            }
+        }
+        manifest.beginField();
+        manifest.appendLong(countWrittenRows);
+        manifest.endRecord();
+        ++countManifestRecords;
+        lane.rowCount += countWrittenRows;
+    }
+
+    /**
+     * Gives the file back, rolling it over to the next part if it is full
+     */
+    void release(Lane lane) {
+        try {
+            if (lane.writer != null && lane.writer.getBytesWritten() >= maxFileSize) {
+                lane.commit();
+            }
+        } finally {
+            freeLanes.add(lane);
+        }
+    }
+
+    private static String toPlainString(Object value) {
+        return value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : String.valueOf(value);
+    }
+
+    /**
+     * One of the shared files, written by one task at a time
+     */
+    final class Lane {
+        private final int index;
+        private int part;
+        private String fileName;
+        private CsvWriter writer;
+        /**
+         * Rows in the current part, guarded by the output
+         */
+        private long rowCount;
+
+        private Lane(int index) {
+            this.index = index;
+        }
+
+        CsvWriter getWriter() {
+            return writer;
+        }
+
+        private void open() {
+            if (writer != null) {
+                return;
+            }
+            fileName = FILE_NAME_PREFIX + String.format(PART_NAME_FORMAT, index, part) + fileNameSuffix +
+                    CSV_EXTENSION + params.getCompression().getFileExtension();
+            writer = CsvWriter.open(
+                    params.getOutputDir() + fileName,
+                    0,
+                    params.getCompression(),
+                    params.getCompressionThreads(),
+                    metrics);
+            synchronized (FanInOutput.this) {
+                ++countFiles;
+            }
+        }
+
+        private void commit() {
+            if (writer == null) {
+                return;
+            }
+            final long committedRowCount;
+            synchronized (FanInOutput.this) {
+                committedRowCount = rowCount;
+                rowCount = 0;
+            }
+            try {
+                writer.commit(committedRowCount);
+            } finally {
+                writer = null;
+                ++part;
+            }
+        }
+
+        private void close() {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.pasha.oracleToCsvDataMigration.fanin;
+
+import com.pasha.oracleToCsvDataMigration.executor.CsvRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.CsvWriter;
+import com.pasha.oracleToCsvDataMigration.executor.IRowCursor;
+import com.pasha.oracleToCsvDataMigration.executor.IRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes the rows of a task to the files of {@link FanInOutput}, every query to the file which is free at the time
+ */
+final class FanInRowSink implements IRowSink {
+
+    private static final Object[] NO_RANGE = new Object[0];
+
+    private final FanInOutput output;
+    private final String tableName;
+    private final MigrationParams params;
+    private final MigrationMetrics metrics;
+    private Object[] range = NO_RANGE;
+    private long bytesWritten;
+
+    FanInRowSink(FanInOutput output, String tableName, MigrationParams params, MigrationMetrics metrics) {
+        this.output = output;
+        this.tableName = tableName;
+        this.params = params;
+        this.metrics = metrics;
+    }
+
+    /**
+     * The bind values of the query are the range recorded in the manifest
+     */
+    @Override
+    public long export(JdbcTemplate jdbcTemplate, String query, IRowCursor rowCursor, Object... args) {
+        range = args;
+        return IRowSink.super.export(jdbcTemplate, query, rowCursor, args);
+    }
+
+    @Override
+    public long writeRows(ResultSet resultSet, IRowCursor rowCursor) throws SQLException {
+        output.checkColumns(tableName, resultSet.getMetaData());
+        final FanInOutput.Lane lane = output.acquire();
+        try {
+            final CsvWriter csvWriter = lane.getWriter();
+            final long fileBytesWritten = csvWriter.getFileBytesWritten();
+            final long countWrittenRows = new CsvRowSink(csvWriter, params, metrics).writeRows(resultSet, rowCursor);
+            bytesWritten += csvWriter.getFileBytesWritten() - fileBytesWritten;
+            output.record(lane, tableName, range, countWrittenRows);
+            return countWrittenRows;
+        } finally {
+            output.release(lane);
+        }
+    }
+
+    /**
+     * Shared files are made durable when they are closed
+     *
+     * @return 0, a shared file can't be continued by a resumed task
+     */
+    @Override
+    public long checkpoint() {
+        return 0;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Shared files are committed by {@link FanInOutput} when they are full or the run is finished
+     */
+    @Override
+    public void commit(long rowCount) {
+    }
+
+    /**
+     * The files stay open for the other tasks
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,48 @@
+package com.pasha.oracleToCsvDataMigration.incremental;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Rows of a run to be exported per table: all of them, or only the ones changed since the previous run
+ */
+public final class DeltaExport {
+
+    /**
+     * Every table is exported in full
+     */
+    public static final DeltaExport FULL = new DeltaExport(null, Collections.emptyMap());
+
+    private static final String DELTA_FILE_TAG = "_DELTA_";
+
+    private final String runId;
+    private final Map<String, String> conditions;
+
+    DeltaExport(String runId, Map<String, String> conditions) {
+        this.runId = runId;
+        this.conditions = conditions;
+    }
+
+    /**
+     * SQL condition on the changed rows of the table
+     *
+     * @return null if all the rows of the table are exported
+     */
+    public String getCondition(String tableName) {
+        return conditions.get(tableName);
+    }
+
+    /**
+     * Delta files of every run get their own names, so they don't overwrite the files of the previous runs
+     */
+    public String getFileNameSuffix(String tableName) {
+        return conditions.containsKey(tableName) ? DELTA_FILE_TAG + runId : "";
+    }
+
+    /**
+     * Suffix of the files shared by all the tables of the run
+     */
+    public String getFileNameSuffix() {
+        return conditions.isEmpty() ? "" : DELTA_FILE_TAG + runId;
+    }
+}
@@ -0,0 +1,136 @@
+package com.pasha.oracleToCsvDataMigration.incremental;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * High-water marks of the change column per table, kept in a properties file between runs.
+ * <p>
+ * A mark is the SQL literal of the largest value of the change column which is exported.
+ * The marks of a run are saved as pending before the run starts and become committed only
+ * when the run is finished, so an interrupted run is resumed with the same bounds.
+ * The file is replaced atomically on every save
+ */
+@Slf4j
+public final class HighWaterMarkStore {
+
+    public static final String FILE_NAME = "high_water_marks.properties";
+
+    private static final String CHANGE_COLUMN = "changeColumn";
+    private static final String PENDING_RUN_ID = "pending.runId";
+    private static final String COMMITTED_SUFFIX = ".committed";
+    private static final String PENDING_SUFFIX = ".pending";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final Path path;
+    private final Properties properties;
+
+    private HighWaterMarkStore(Path path, Properties properties) {
+        this.path = path;
+        this.properties = properties;
+    }
+
+    /**
+     * Reads the marks of the change column. Marks of another change column are discarded
+     */
+    public static HighWaterMarkStore load(String stateFile, String changeColumn) {
+        final Path path = Paths.get(stateFile);
+        final Properties properties = new Properties();
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        final String storedChangeColumn = properties.getProperty(CHANGE_COLUMN);
+        if (storedChangeColumn != null && !storedChangeColumn.equalsIgnoreCase(changeColumn)) {
+            log.warn("High-water marks in {} are of change column {}, not {}. Tables are exported in full",
+                    stateFile, storedChangeColumn, changeColumn);
+            properties.clear();
+        }
+        properties.setProperty(CHANGE_COLUMN, changeColumn);
+        return new HighWaterMarkStore(path, properties);
+    }
+
+    /**
+     * @return null if the table was never exported
+     */
+    public String getCommitted(String tableName) {
+        return properties.getProperty(tableName + COMMITTED_SUFFIX);
+    }
+
+    /**
+     * @return null if there is no unfinished run
+     */
+    public String getPending(String tableName) {
+        return properties.getProperty(tableName + PENDING_SUFFIX);
+    }
+
+    /**
+     * @return id of the unfinished run, null if there is none
+     */
+    public String getPendingRunId() {
+        return properties.getProperty(PENDING_RUN_ID);
+    }
+
+    /**
+     * Discards the marks of an unfinished run
+     */
+    public void clearPending() {
+        for (String key : properties.stringPropertyNames()) {
+            if (key.endsWith(PENDING_SUFFIX)) {
+                properties.remove(key);
+            }
+        }
+        properties.remove(PENDING_RUN_ID);
+    }
+
+    public void setPending(String runId, String tableName, String highWaterMark) {
+        properties.setProperty(PENDING_RUN_ID, runId);
+        if (highWaterMark == null) {
+            properties.remove(tableName + PENDING_SUFFIX);
+        } else {
+            properties.setProperty(tableName + PENDING_SUFFIX, highWaterMark);
+        }
+    }
+
+    /**
+     * Makes the pending marks committed, to be called when all the rows up to them are exported
+     */
+    public void commitPending() {
+        for (String key : properties.stringPropertyNames()) {
+            if (key.endsWith(PENDING_SUFFIX)) {
+                final String tableName = key.substring(0, key.length() - PENDING_SUFFIX.length());
+                properties.setProperty(tableName + COMMITTED_SUFFIX, properties.getProperty(key));
+            }
+        }
+        clearPending();
+    }
+
+    public void save() {
+        final Path tempPath = Paths.get(path + TEMP_FILE_SUFFIX);
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                properties.store(writer, "High-water marks of incremental export");
+            }
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
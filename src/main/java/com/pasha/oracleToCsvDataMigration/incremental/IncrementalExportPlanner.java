@@ -0,0 +1,137 @@
+package com.pasha.oracleToCsvDataMigration.incremental;
+
+import com.pasha.oracleToCsvDataMigration.config.ShardRouter;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plans an incremental run: a table exported before gets only the rows with the change column
+ * above its high-water mark of the previous run and up to the largest value of the column
+ * at the start of this run. A table exported for the first time is exported in full.
+ * <p>
+ * The change column has to grow with every change of a row, e.g. a last modification date
+ * or ORA_ROWSCN. A row committed with a value below the mark after the mark is read is missed,
+ * so with a modification date filled in by the application the column should be set at commit time
+ */
+@Slf4j
+@Component
+public class IncrementalExportPlanner {
+
+    private static final String MAX_QUERY_TEMPLATE = "SELECT MAX(%s) FROM %s";
+    private static final String DELTA_CONDITION_TEMPLATE = "%1$s > %2$s AND %1$s <= %3$s";
+    private static final DateTimeFormatter RUN_ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+    private static final String DATE_TYPE_NAME = "DATE";
+    private static final String DATE_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    private final ShardRouter shardRouter;
+
+    @Autowired
+    public IncrementalExportPlanner(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Reads the high-water marks of the run and saves them as pending.
+     * A resumed run takes the pending marks of the interrupted one
+     *
+     * @return {@link DeltaExport#FULL} if no change column is specified
+     */
+    public DeltaExport plan(MigrationParams params) {
+        final String changeColumn = params.getChangeColumn();
+        if (changeColumn == null) {
+            return DeltaExport.FULL;
+        }
+        final HighWaterMarkStore store = HighWaterMarkStore.load(params.getStateFile(), changeColumn);
+        final boolean resumed = params.getResume() && store.getPendingRunId() != null;
+        final String runId = resumed ? store.getPendingRunId() : LocalDateTime.now().format(RUN_ID_FORMAT);
+        if (!resumed) {
+            store.clearPending();
+        }
+
+        final Map<String, String> conditions = new HashMap<>();
+        for (String tableName : params.getTableNamesToVisit()) {
+            final String lowerMark = store.getCommitted(tableName);
+            String upperMark = resumed ? store.getPending(tableName) : findHighWaterMark(changeColumn, tableName);
+            if (upperMark == null) {
+                // The table is empty
+                upperMark = lowerMark;
+            }
+            if (!resumed) {
+                store.setPending(runId, tableName, upperMark);
+            }
+            if (lowerMark == null) {
+                log.info("Table {} has no high-water mark, it is exported in full up to {} = {}",
+                        tableName, changeColumn, upperMark);
+            } else {
+                conditions.put(tableName, String.format(DELTA_CONDITION_TEMPLATE, changeColumn, lowerMark, upperMark));
+                log.info("Table {} is exported for {} in ({}, {}]", tableName, changeColumn, lowerMark, upperMark);
+            }
+        }
+        store.save();
+        return new DeltaExport(runId, conditions);
+    }
+
+    /**
+     * Makes the marks of a finished run the lower bounds of the next one
+     */
+    public void commit(MigrationParams params) {
+        if (params.getChangeColumn() == null) {
+            return;
+        }
+        final HighWaterMarkStore store = HighWaterMarkStore.load(params.getStateFile(), params.getChangeColumn());
+        store.commitPending();
+        store.save();
+        log.info("High-water marks are saved to {}", params.getStateFile());
+    }
+
+    private String findHighWaterMark(String changeColumn, String tableName) {
+        final String query = String.format(MAX_QUERY_TEMPLATE, changeColumn, tableName);
+        return shardRouter.getJdbcTemplate(tableName).query(query, (ResultSetExtractor<String>) resultSet -> {
+            resultSet.next();
+            return toSqlLiteral(resultSet);
+        });
+    }
+
+    /**
+     * A DATE is written as TO_DATE, so an index on the column can still be used
+     */
+    private static String toSqlLiteral(ResultSet resultSet) throws SQLException {
+        final int type = resultSet.getMetaData().getColumnType(1);
+        switch (type) {
+            case Types.DATE:
+            case Types.TIMESTAMP:
+                final Timestamp timestamp = resultSet.getTimestamp(1);
+                if (timestamp == null) {
+                    return null;
+                }
+                if (type == Types.DATE || DATE_TYPE_NAME.equalsIgnoreCase(resultSet.getMetaData().getColumnTypeName(1))) {
+                    return "TO_DATE('" + new SimpleDateFormat(DATE_PATTERN).format(timestamp) +
+                            "', 'YYYY-MM-DD HH24:MI:SS')";
+                }
+                return "TIMESTAMP '" + timestamp + "'";
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                final BigDecimal number = resultSet.getBigDecimal(1);
+                return number == null ? null : number.toPlainString();
+            default:
+                final String value = resultSet.getString(1);
+                return value == null ? null : "'" + value.replace("'", "''") + "'";
+        }
+    }
+}
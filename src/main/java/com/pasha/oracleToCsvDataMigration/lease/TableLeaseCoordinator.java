@@ -0,0 +1,401 @@
+package com.pasha.oracleToCsvDataMigration.lease;
+
+import com.pasha.oracleToCsvDataMigration.executor.DiscountMigrationTask;
+import com.pasha.oracleToCsvDataMigration.executor.OutputFile;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the tables of a run between worker processes through the output directory, which all of them see.
+ * <p>
+ * A worker takes a table by creating its lease file with {@code CREATE_NEW}, so only one of the workers
+ * gets it, and keeps the lease by touching the file every third of {@code leaseSeconds}. A lease which
+ * is not touched for {@code leaseSeconds} belongs to a dead worker and is taken over: it is renamed
+ * away, which only one worker can do, and the table is exported again from scratch. The clocks of
+ * the machines must not be apart by more than a fraction of the lease.
+ * <p>
+ * Every worker writes its files to a directory of its own. A finished table gets a done file, linked
+ * into place so that only the first worker to finish the table is taken. It lists the files of
+ * the table with the numbers from their manifests, the files of the other attempts are ignored.
+ * When all the tables are done, the done files are merged into {@value #RUN_MANIFEST_FILE_NAME}
+ * <p>
+ * Thread safe
+ */
+@Slf4j
+public final class TableLeaseCoordinator implements Closeable {
+
+    public static final String RUN_MANIFEST_FILE_NAME = "run.manifest";
+
+    private static final String LEASE_DIR_NAME = "leases";
+    private static final String LEASE_SUFFIX = ".lease";
+    private static final String EXPIRED_LEASE_SUFFIX = ".expired.";
+    private static final String DONE_SUFFIX = ".done";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String FIELD_DELIMITER = "\t";
+    private static final String RECORD_DELIMITER = "\n";
+    private static final int HEARTBEATS_PER_LEASE = 3;
+
+    private final Path outputDir;
+    private final Path leaseDir;
+    @Getter
+    private final String workerId;
+    /**
+     * Output directory of this worker, with a trailing separator like {@code outputDir} of the params
+     */
+    @Getter
+    private final String workerOutputDir;
+    private final long leaseMillis;
+    private final Set<String> leasedTableNames = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService heartbeat;
+
+    private TableLeaseCoordinator(Path outputDir, String workerId, int leaseSeconds) {
+        this.outputDir = outputDir;
+        this.leaseDir = outputDir.resolve(LEASE_DIR_NAME);
+        this.workerId = workerId;
+        this.workerOutputDir = outputDir.resolve(workerId).toString() + File.separator;
+        this.leaseMillis = TimeUnit.SECONDS.toMillis(leaseSeconds);
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param outputDir    output directory of the run, shared by all the workers
+     * @param workerId     unique among the workers of the run, a worker started again with the same id
+     *                     takes its leases back at once
+     * @param leaseSeconds time after which the tables of a worker which stopped renewing its leases are taken over
+     */
+    public static TableLeaseCoordinator open(String outputDir, String workerId, int leaseSeconds) {
+        final TableLeaseCoordinator coordinator = new TableLeaseCoordinator(Paths.get(outputDir), workerId, leaseSeconds);
+        try {
+            Files.createDirectories(coordinator.leaseDir);
+            Files.createDirectories(Paths.get(coordinator.workerOutputDir));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        final long heartbeatMillis = Math.max(1, coordinator.leaseMillis / HEARTBEATS_PER_LEASE);
+        coordinator.heartbeat.scheduleWithFixedDelay(
+                coordinator::renewLeases, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        log.info("Worker {} writes to {}, leases expire in {} s", workerId, coordinator.workerOutputDir, leaseSeconds);
+        return coordinator;
+    }
+
+    /**
+     * Leases tables which are neither done nor leased by a live worker. Files which this worker
+     * left of a table in a previous attempt are deleted
+     *
+     * @return up to {@code maxTables} tables, empty if there is nothing to take at the moment
+     */
+    public List<String> claim(List<String> tableNames, int maxTables) {
+        final List<String> claimedTableNames = new ArrayList<>();
+        for (String tableName : tableNames) {
+            if (claimedTableNames.size() >= maxTables) {
+                break;
+            }
+            if (!leasedTableNames.contains(tableName) && tryClaim(tableName)) {
+                deleteFilesOfTable(tableName);
+                leasedTableNames.add(tableName);
+                claimedTableNames.add(tableName);
+            }
+        }
+        if (!claimedTableNames.isEmpty()) {
+            log.info("Worker {} has leased {}", workerId, claimedTableNames);
+        }
+        return claimedTableNames;
+    }
+
+    /**
+     * @return whether all the tables are done by some worker
+     */
+    public boolean isFinished(List<String> tableNames) {
+        for (String tableName : tableNames) {
+            if (!Files.exists(getDonePath(tableName))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the table done with the files this worker has committed for it and gives up its lease
+     *
+     * @return false if another worker has finished the table first, the files of this worker are ignored then
+     */
+    public boolean complete(String tableName) {
+        final StringBuilder records = new StringBuilder();
+        final Path workerDir = Paths.get(workerOutputDir);
+        try (DirectoryStream<Path> manifestPaths =
+                     Files.newDirectoryStream(workerDir, "*" + OutputFile.MANIFEST_SUFFIX)) {
+            for (Path manifestPath : manifestPaths) {
+                final Properties manifest = new Properties();
+                try (Reader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+                    manifest.load(reader);
+                }
+                final String fileName = manifest.getProperty("file");
+                if (isFileOfTable(fileName, tableName)) {
+                    records.append(tableName)
+                            .append(FIELD_DELIMITER).append(outputDir.relativize(workerDir.resolve(fileName)))
+                            .append(FIELD_DELIMITER).append(manifest.getProperty("rows"))
+                            .append(FIELD_DELIMITER).append(manifest.getProperty("bytes"))
+                            .append(FIELD_DELIMITER).append(manifest.getProperty("crc32"))
+                            .append(RECORD_DELIMITER);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        final boolean completed;
+        final Path tempPath = leaseDir.resolve(tableName + DONE_SUFFIX + "." + workerId + TEMP_FILE_SUFFIX);
+        try {
+            writeSynced(tempPath, records.toString());
+            completed = createLink(getDonePath(tableName), tempPath);
+            Files.delete(tempPath);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!completed) {
+            log.warn("Table {} is already done by another worker, the files of worker {} are ignored",
+                    tableName, workerId);
+        }
+        release(tableName);
+        return completed;
+    }
+
+    /**
+     * Gives up the lease of a table which is not done, so another worker can take it at once
+     */
+    public void release(String tableName) {
+        if (!leasedTableNames.remove(tableName)) {
+            return;
+        }
+        final Path leasePath = getLeasePath(tableName);
+        try {
+            if (workerId.equals(readOwner(leasePath))) {
+                Files.deleteIfExists(leasePath);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Merges the done files of the tables into the run manifest, one line per file:
+     * table, path relative to the output directory, rows, bytes and CRC32, separated by tabs.
+     * Every worker which sees the run finished writes the same manifest, it is replaced atomically
+     */
+    public void writeRunManifest(List<String> tableNames) {
+        final StringBuilder records = new StringBuilder();
+        try {
+            for (String tableName : tableNames) {
+                records.append(new String(Files.readAllBytes(getDonePath(tableName)), StandardCharsets.UTF_8));
+            }
+            final Path manifestPath = outputDir.resolve(RUN_MANIFEST_FILE_NAME);
+            final Path tempPath = outputDir.resolve(RUN_MANIFEST_FILE_NAME + "." + workerId + TEMP_FILE_SUFFIX);
+            writeSynced(tempPath, records.toString());
+            Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Run manifest of {} tables is written to {}", tableNames.size(), outputDir.resolve(RUN_MANIFEST_FILE_NAME));
+    }
+
+    /**
+     * Stops renewing the leases and gives up the ones which are still held
+     */
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        for (String tableName : new ArrayList<>(leasedTableNames)) {
+            release(tableName);
+        }
+    }
+
+    private boolean tryClaim(String tableName) {
+        if (Files.exists(getDonePath(tableName))) {
+            return false;
+        }
+        final Path leasePath = getLeasePath(tableName);
+        try {
+            if (!createLease(leasePath)) {
+                if (!takeOver(tableName, leasePath) || !createLease(leasePath)) {
+                    return false;
+                }
+            }
+            // The previous holder may have finished the table between the check and the lease
+            if (Files.exists(getDonePath(tableName))) {
+                Files.deleteIfExists(leasePath);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return false if the link exists
+     */
+    private static boolean createLink(Path link, Path existing) throws IOException {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    private boolean createLease(Path leasePath) throws IOException {
+        try {
+            Files.write(leasePath, workerId.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes an expired lease, or a lease of a previous process of this worker
+     *
+     * @return whether the lease is removed by this worker
+     */
+    private boolean takeOver(String tableName, Path leasePath) throws IOException {
+        final String owner = readOwner(leasePath);
+        if (owner == null || (!owner.equals(workerId) && !isExpired(leasePath))) {
+            return false;
+        }
+        final Path expiredPath = leaseDir.resolve(tableName + EXPIRED_LEASE_SUFFIX + workerId);
+        try {
+            Files.move(leasePath, expiredPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // Another worker has taken it over first
+            return false;
+        }
+        // The lease could be renewed or taken over by another worker after the check, then it is put back
+        if (!owner.equals(workerId) && !isExpired(expiredPath)) {
+            try {
+                Files.move(expiredPath, leasePath);
+            } catch (FileAlreadyExistsException e) {
+                Files.delete(expiredPath);
+            }
+            return false;
+        }
+        Files.delete(expiredPath);
+        if (owner.equals(workerId)) {
+            log.info("Table {} is taken back from a previous process of worker {}", tableName, workerId);
+        } else {
+            log.warn("Lease of {} by worker {} has expired, the table is taken over", tableName, owner);
+        }
+        return true;
+    }
+
+    private boolean isExpired(Path leasePath) throws IOException {
+        try {
+            return System.currentTimeMillis() - Files.getLastModifiedTime(leasePath).toMillis() > leaseMillis;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Touches the held leases. A lease which has been taken over is dropped, the table is done again
+     * by the other worker and only the first to finish it counts
+     */
+    private void renewLeases() {
+        for (String tableName : leasedTableNames) {
+            final Path leasePath = getLeasePath(tableName);
+            try {
+                if (workerId.equals(readOwner(leasePath))) {
+                    Files.setLastModifiedTime(leasePath, FileTime.fromMillis(System.currentTimeMillis()));
+                } else {
+                    log.warn("Lease of {} is lost by worker {}, another worker has taken the table over",
+                            tableName, workerId);
+                    leasedTableNames.remove(tableName);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Lease of {} can't be renewed", tableName, e);
+            }
+        }
+    }
+
+    /**
+     * @return null if there is no lease
+     */
+    private static String readOwner(Path leasePath) throws IOException {
+        try {
+            return new String(Files.readAllBytes(leasePath), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void deleteFilesOfTable(String tableName) {
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(Paths.get(workerOutputDir))) {
+            for (Path path : paths) {
+                if (isFileOfTable(path.getFileName().toString(), tableName)) {
+                    log.info("Deleting {} of a previous attempt", path);
+                    Files.delete(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Files of a table are named {@code DISCOUNTS_<table>}, followed by a suffix which starts
+     * with a dot or an underscore, see the migration tasks
+     */
+    private static boolean isFileOfTable(String fileName, String tableName) {
+        final String prefix = DiscountMigrationTask.DISCOUNTS + tableName;
+        if (!fileName.startsWith(prefix)) {
+            return false;
+        }
+        if (fileName.length() == prefix.length()) {
+            return true;
+        }
+        final char next = fileName.charAt(prefix.length());
+        return next == '.' || next == '_';
+    }
+
+    private Path getLeasePath(String tableName) {
+        return leaseDir.resolve(tableName + LEASE_SUFFIX);
+    }
+
+    private Path getDonePath(String tableName) {
+        return leaseDir.resolve(tableName + DONE_SUFFIX);
+    }
+
+    private static void writeSynced(Path path, String content) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+}
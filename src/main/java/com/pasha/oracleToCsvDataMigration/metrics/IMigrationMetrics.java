@@ -0,0 +1,83 @@
+package com.pasha.oracleToCsvDataMigration.metrics;
+
+import javax.management.MXBean;
+
+/**
+ * Metrics of the current or the last migration run, exposed through JMX as
+ * {@value MigrationMetrics#OBJECT_NAME}.
+ * <p>
+ * Time is summed up over all the threads, so the shares of fetch, encode, compress and write
+ * tell whether a run is bound by the database, the CPU or the disk
+ */
+@MXBean
+public interface IMigrationMetrics {
+
+    long getMigratedRows();
+
+    /**
+     * Bytes written to the output files, after compression
+     */
+    long getBytesWritten();
+
+    /**
+     * Sum of the row count estimates of the tasks, -1 if some tasks have no estimate
+     */
+    long getEstimatedRows();
+
+    double getRowsPerSecond();
+
+    double getBytesPerSecond();
+
+    /**
+     * Seconds left at the average speed of the run, -1 if unknown
+     */
+    long getEtaSeconds();
+
+    /**
+     * Seconds spent waiting for the database in {@code ResultSet.next()}
+     */
+    double getFetchSeconds();
+
+    /**
+     * Seconds spent reading values from the result set and encoding them
+     */
+    double getEncodeSeconds();
+
+    double getCompressSeconds();
+
+    /**
+     * Seconds spent in writes to the output files
+     */
+    double getWriteSeconds();
+
+    /**
+     * Seconds the tasks waited before their queries for the rate limit or the query limit
+     */
+    double getThrottleSeconds();
+
+    int getNumThreads();
+
+    /**
+     * Queries allowed in flight at a time, changed during the run by the adaptive concurrency control
+     */
+    int getQueryLimit();
+
+    int getRunningTasks();
+
+    int getFinishedTasks();
+
+    int getTotalTasks();
+
+    /**
+     * Batches waiting in the queues of the export pipelines
+     */
+    long getQueuedBatches();
+
+    double getQueryLatencyP50Millis();
+
+    double getQueryLatencyP99Millis();
+
+    double getWriteLatencyP50Millis();
+
+    double getWriteLatencyP99Millis();
+}
@@ -0,0 +1,60 @@
+package com.pasha.oracleToCsvDataMigration.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with power of two buckets of microseconds.
+ * Percentiles are reported as the upper bound of their bucket, so they are accurate up to a factor of 2.
+ * <p>
+ * Thread safe
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+    private static final long NANOS_PER_MICRO = 1_000;
+
+    /**
+     * Bucket i counts durations in [2^(i-1), 2^i) microseconds, bucket 0 counts durations under a microsecond
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        final long micros = nanos / NANOS_PER_MICRO;
+        final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return upper bound of the percentile in milliseconds, 0 if nothing is recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        final long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            if (seen >= rank && seen > 0) {
+                return (1L << i) / 1000.0;
+            }
+        }
+        return (1L << (BUCKETS - 1)) / 1000.0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.pasha.oracleToCsvDataMigration.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a migration run. Writers of the counters add to them in batches,
+ * not per row, so the counters cost nothing noticeable on the hot path.
+ * <p>
+ * Thread safe
+ */
+@Slf4j
+@Component
+public final class MigrationMetrics implements IMigrationMetrics {
+
+    public static final String OBJECT_NAME = "com.pasha.oracleToCsvDataMigration:type=MigrationMetrics";
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final LongAdder migratedRows = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder fetchNanos = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder throttleNanos = new LongAdder();
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final AtomicInteger finishedTasks = new AtomicInteger();
+    private final AtomicInteger totalTasks = new AtomicInteger();
+    private final AtomicLong queuedBatches = new AtomicLong();
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private volatile long estimatedRows;
+    private volatile int numThreads;
+    private volatile int queryLimit;
+    private volatile long startNanos = System.nanoTime();
+    private volatile long finishNanos;
+
+    /**
+     * Resets the counters for a new run and exposes them through JMX in place of the ones of the last run.
+     * Tasks are counted as they are planned, see {@link #tasksPlanned(int, long)}
+     */
+    public synchronized void start(int numThreads) {
+        migratedRows.reset();
+        bytesWritten.reset();
+        fetchNanos.reset();
+        encodeNanos.reset();
+        compressNanos.reset();
+        writeNanos.reset();
+        throttleNanos.reset();
+        runningTasks.set(0);
+        finishedTasks.set(0);
+        queuedBatches.set(0);
+        queryLatency.reset();
+        writeLatency.reset();
+        this.totalTasks.set(0);
+        this.estimatedRows = 0;
+        this.numThreads = numThreads;
+        this.finishNanos = 0;
+        this.startNanos = System.nanoTime();
+        register();
+    }
+
+    public void finish() {
+        finishNanos = System.nanoTime();
+    }
+
+    /**
+     * Replaces the metrics registered by an earlier instance, so every run can have its own instance
+     */
+    private void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (MigrationMetrics.class) {
+            try {
+                final ObjectName name = new ObjectName(OBJECT_NAME);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+            } catch (JMException e) {
+                log.warn("Migration metrics are not available through JMX", e);
+            }
+        }
+    }
+
+    /**
+     * Rows read from the result set and the time spent waiting for them
+     */
+    public void addFetched(long rows, long nanos) {
+        migratedRows.add(rows);
+        fetchNanos.add(nanos);
+    }
+
+    public void addEncoded(long nanos) {
+        encodeNanos.add(nanos);
+    }
+
+    public void addCompressed(long nanos) {
+        compressNanos.add(nanos);
+    }
+
+    public void addWritten(long bytes, long nanos) {
+        bytesWritten.add(bytes);
+        writeNanos.add(nanos);
+        writeLatency.record(nanos);
+    }
+
+    /**
+     * A query of a task has returned all its rows
+     */
+    public void addQuery(long nanos) {
+        queryLatency.record(nanos);
+    }
+
+    /**
+     * Time a task waited before a query for the rate limit or the query limit of the run
+     */
+    public void addThrottled(long nanos) {
+        throttleNanos.add(nanos);
+    }
+
+    /**
+     * Set by the throttle of the run when it is created and when the adaptive concurrency changes the limit
+     */
+    public void setQueryLimit(int queryLimit) {
+        this.queryLimit = queryLimit;
+    }
+
+    public void taskStarted() {
+        runningTasks.incrementAndGet();
+    }
+
+    public void taskFinished() {
+        runningTasks.decrementAndGet();
+        finishedTasks.incrementAndGet();
+    }
+
+    /**
+     * Tasks planned or split off during the run
+     *
+     * @param estimatedRows rows of the tasks, -1 if unknown
+     */
+    public synchronized void tasksPlanned(int count, long estimatedRows) {
+        totalTasks.addAndGet(count);
+        if (this.estimatedRows >= 0) {
+            this.estimatedRows = estimatedRows < 0 ? -1 : this.estimatedRows + estimatedRows;
+        }
+    }
+
+    public void batchQueued() {
+        queuedBatches.incrementAndGet();
+    }
+
+    public void batchDequeued() {
+        queuedBatches.decrementAndGet();
+    }
+
+    /**
+     * Seconds since the start of the run, up to its finish
+     */
+    public double getElapsedSeconds() {
+        final long endNanos = finishNanos == 0 ? System.nanoTime() : finishNanos;
+        return (endNanos - startNanos) / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public long getMigratedRows() {
+        return migratedRows.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        final double elapsedSeconds = getElapsedSeconds();
+        return elapsedSeconds > 0 ? getMigratedRows() / elapsedSeconds : 0;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        final double elapsedSeconds = getElapsedSeconds();
+        return elapsedSeconds > 0 ? getBytesWritten() / elapsedSeconds : 0;
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        final double rowsPerSecond = getRowsPerSecond();
+        if (estimatedRows < 0 || rowsPerSecond <= 0) {
+            return -1;
+        }
+        return (long) (Math.max(0, estimatedRows - getMigratedRows()) / rowsPerSecond);
+    }
+
+    @Override
+    public double getFetchSeconds() {
+        return fetchNanos.sum() / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public double getEncodeSeconds() {
+        return encodeNanos.sum() / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public double getCompressSeconds() {
+        return compressNanos.sum() / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public double getWriteSeconds() {
+        return writeNanos.sum() / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public double getThrottleSeconds() {
+        return throttleNanos.sum() / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    @Override
+    public int getQueryLimit() {
+        return queryLimit;
+    }
+
+    @Override
+    public int getRunningTasks() {
+        return runningTasks.get();
+    }
+
+    @Override
+    public int getFinishedTasks() {
+        return finishedTasks.get();
+    }
+
+    @Override
+    public int getTotalTasks() {
+        return totalTasks.get();
+    }
+
+    @Override
+    public long getQueuedBatches() {
+        return queuedBatches.get();
+    }
+
+    @Override
+    public double getQueryLatencyP50Millis() {
+        return queryLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getQueryLatencyP99Millis() {
+        return queryLatency.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getWriteLatencyP50Millis() {
+        return writeLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getWriteLatencyP99Millis() {
+        return writeLatency.getPercentileMillis(99);
+    }
+}
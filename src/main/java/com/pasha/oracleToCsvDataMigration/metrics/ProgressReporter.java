@@ -0,0 +1,99 @@
+package com.pasha.oracleToCsvDataMigration.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically logs a progress line of the run: rows and bytes with their rates over the last
+ * interval, ETA, shares of time spent in fetch, encode, compress and write, busy workers and queued batches
+ */
+@Slf4j
+public final class ProgressReporter implements AutoCloseable {
+
+    private static final double BYTES_PER_MEGABYTE = 1 << 20;
+
+    private final MigrationMetrics metrics;
+    private final ScheduledExecutorService scheduler;
+    private long lastRows;
+    private long lastBytes;
+    private double lastElapsedSeconds;
+
+    /**
+     * Starts reporting, nothing is reported when the interval is not positive
+     */
+    public ProgressReporter(MigrationMetrics metrics, int intervalSeconds) {
+        this.metrics = metrics;
+        if (intervalSeconds <= 0) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void report() {
+        try {
+            final long rows = metrics.getMigratedRows();
+            final long bytes = metrics.getBytesWritten();
+            final double elapsedSeconds = metrics.getElapsedSeconds();
+            final double intervalSeconds = elapsedSeconds - lastElapsedSeconds;
+            final long estimatedRows = metrics.getEstimatedRows();
+            final double totalSeconds = metrics.getFetchSeconds() + metrics.getEncodeSeconds() +
+                    metrics.getCompressSeconds() + metrics.getWriteSeconds();
+
+            log.info("Progress: {} rows{}, {} rows/s, {} MB/s, ETA {}. " +
+                            "Time: fetch {}%, encode {}%, compress {}%, write {}%. " +
+                            "Tasks: {} running on {} threads, {} of {} finished, query limit {}. Queued batches: {}. " +
+                            "Query latency p50/p99: {}/{} ms",
+                    rows,
+                    estimatedRows > 0 ? String.format(" of ~%d (%.1f%%)", estimatedRows, 100.0 * rows / estimatedRows) : "",
+                    Math.round((rows - lastRows) / intervalSeconds),
+                    String.format("%.1f", (bytes - lastBytes) / BYTES_PER_MEGABYTE / intervalSeconds),
+                    formatEta(metrics.getEtaSeconds()),
+                    share(metrics.getFetchSeconds(), totalSeconds),
+                    share(metrics.getEncodeSeconds(), totalSeconds),
+                    share(metrics.getCompressSeconds(), totalSeconds),
+                    share(metrics.getWriteSeconds(), totalSeconds),
+                    metrics.getRunningTasks(),
+                    metrics.getNumThreads(),
+                    metrics.getFinishedTasks(),
+                    metrics.getTotalTasks(),
+                    metrics.getQueryLimit(),
+                    metrics.getQueuedBatches(),
+                    metrics.getQueryLatencyP50Millis(),
+                    metrics.getQueryLatencyP99Millis());
+
+            lastRows = rows;
+            lastBytes = bytes;
+            lastElapsedSeconds = elapsedSeconds;
+        } catch (RuntimeException e) {
+            // An exception would cancel the next reports
+            log.warn("Failed to report progress", e);
+        }
+    }
+
+    private static long share(double seconds, double totalSeconds) {
+        return totalSeconds > 0 ? Math.round(100 * seconds / totalSeconds) : 0;
+    }
+
+    private static String formatEta(long etaSeconds) {
+        if (etaSeconds < 0) {
+            return "unknown";
+        }
+        return String.format("%02d:%02d:%02d", etaSeconds / 3600, etaSeconds / 60 % 60, etaSeconds % 60);
+    }
+}
@@ -0,0 +1,76 @@
+package com.pasha.oracleToCsvDataMigration.parquet;
+
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Parquet output over the channel of an output file, so the file is written under its temporary name
+ * and its bytes are metered as the ones of csv files. The writer closes the channel when the footer is written
+ */
+final class ChannelOutputFile implements OutputFile {
+
+    private final WritableByteChannel channel;
+
+    ChannelOutputFile(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) {
+        return new ChannelOutputStream(channel);
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+        return create(blockSizeHint);
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+        return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+        return 0;
+    }
+
+    private static final class ChannelOutputStream extends PositionOutputStream {
+        private final WritableByteChannel channel;
+        private final byte[] singleByte = new byte[1];
+        private long position;
+
+        private ChannelOutputStream(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long getPos() {
+            return position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            singleByte[0] = (byte) b;
+            write(singleByte, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            position += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
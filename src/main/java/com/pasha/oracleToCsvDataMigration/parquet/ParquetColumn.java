@@ -0,0 +1,318 @@
+package com.pasha.oracleToCsvDataMigration.parquet;
+
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Types;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.TimeZone;
+
+/**
+ * One nullable column of the file. The Parquet type is resolved once from the result set metadata:
+ * <ul>
+ * <li>NUMBER with scale 0 and up to 18 digits - INT64</li>
+ * <li>other NUMBER with up to 18 digits - INT64 DECIMAL(precision, scale)</li>
+ * <li>NUMBER with more digits - BINARY DECIMAL(precision, scale)</li>
+ * <li>NUMBER without precision - BINARY DECIMAL(38, 10), a value which doesn't fit it fails the task,
+ * such a column has to be cast in the select list</li>
+ * <li>FLOAT and DOUBLE - DOUBLE</li>
+ * <li>DATE and TIMESTAMP - INT64 TIMESTAMP(MILLIS) of the local time, as written to csv</li>
+ * <li>everything else - UTF-8 BINARY</li>
+ * </ul>
+ */
+abstract class ParquetColumn {
+
+    private static final int MAX_LONG_PRECISION = 18;
+    private static final int MAX_NUMBER_PRECISION = 38;
+    /**
+     * Oracle reports NUMBER without precision as precision 0 and scale -127, and FLOAT with that scale too
+     */
+    private static final int FLOAT_SCALE = -127;
+    private static final int UNCONSTRAINED_SCALE = 10;
+
+    private final String name;
+    private final int columnNumber;
+    private boolean defined;
+
+    private ParquetColumn(String name, int columnNumber) {
+        this.name = name;
+        this.columnNumber = columnNumber;
+    }
+
+    static ParquetColumn[] fromMetaData(ResultSetMetaData metaData) throws SQLException {
+        final ParquetColumn[] columns = new ParquetColumn[metaData.getColumnCount()];
+        for (int columnNumber = 1; columnNumber <= columns.length; ++columnNumber) {
+            columns[columnNumber - 1] = createColumn(metaData, columnNumber);
+        }
+        return columns;
+    }
+
+    private static ParquetColumn createColumn(ResultSetMetaData metaData, int columnNumber) throws SQLException {
+        final String name = metaData.getColumnName(columnNumber);
+        switch (metaData.getColumnType(columnNumber)) {
+            case java.sql.Types.DATE:
+            case java.sql.Types.TIMESTAMP:
+                return new TimestampColumn(name, columnNumber);
+            case java.sql.Types.NUMERIC:
+            case java.sql.Types.DECIMAL:
+                return createNumberColumn(name, columnNumber,
+                        metaData.getPrecision(columnNumber), metaData.getScale(columnNumber));
+            case java.sql.Types.FLOAT:
+            case java.sql.Types.DOUBLE:
+                return new DoubleColumn(name, columnNumber);
+            default:
+                return new StringColumn(name, columnNumber);
+        }
+    }
+
+    private static ParquetColumn createNumberColumn(String name, int columnNumber, int precision, int scale) {
+        if (precision > 0 && scale == FLOAT_SCALE) {
+            return new DoubleColumn(name, columnNumber);
+        }
+        if (precision <= 0 || precision > MAX_NUMBER_PRECISION) {
+            return new BinaryDecimalColumn(name, columnNumber, MAX_NUMBER_PRECISION, UNCONSTRAINED_SCALE);
+        }
+        // A negative scale rounds to tens, hundreds and so on, the values are integers of more digits
+        final int decimalPrecision = Math.max(precision - Math.min(scale, 0), scale);
+        final int decimalScale = Math.max(scale, 0);
+        if (decimalPrecision > MAX_LONG_PRECISION) {
+            return new BinaryDecimalColumn(name, columnNumber, decimalPrecision, decimalScale);
+        }
+        if (decimalScale == 0) {
+            return new LongColumn(name, columnNumber);
+        }
+        return new DecimalColumn(name, columnNumber, decimalPrecision, decimalScale);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    abstract PrimitiveType getType();
+
+    /**
+     * Reads the value of the current row of the result set
+     */
+    void fetch(ResultSet resultSet) throws SQLException {
+        defined = fetchValue(resultSet, columnNumber);
+    }
+
+    /**
+     * Adds the fetched value to the record, nothing for null
+     *
+     * @param index index of the column in the schema
+     */
+    void write(RecordConsumer recordConsumer, int index) {
+        if (!defined) {
+            return;
+        }
+        recordConsumer.startField(name, index);
+        addValue(recordConsumer);
+        recordConsumer.endField(name, index);
+    }
+
+    /**
+     * Reads the value of the column, to be added by {@link #addValue(RecordConsumer)}
+     *
+     * @return false for null
+     */
+    protected abstract boolean fetchValue(ResultSet resultSet, int columnNumber) throws SQLException;
+
+    protected abstract void addValue(RecordConsumer recordConsumer);
+
+    private static final class LongColumn extends ParquetColumn {
+        private long value;
+
+        private LongColumn(String name, int columnNumber) {
+            super(name, columnNumber);
+        }
+
+        @Override
+        PrimitiveType getType() {
+            return Types.optional(PrimitiveType.PrimitiveTypeName.INT64).named(getName());
+        }
+
+        @Override
+        protected boolean fetchValue(ResultSet resultSet, int columnNumber) throws SQLException {
+            value = resultSet.getLong(columnNumber);
+            return !resultSet.wasNull();
+        }
+
+        @Override
+        protected void addValue(RecordConsumer recordConsumer) {
+            recordConsumer.addLong(value);
+        }
+    }
+
+    /**
+     * Unscaled values of a fixed scale. A value with more digits than the column is refused, not rounded
+     */
+    private abstract static class AbstractDecimalColumn extends ParquetColumn {
+        protected final int precision;
+        protected final int scale;
+        protected BigInteger unscaledValue;
+
+        private AbstractDecimalColumn(String name, int columnNumber, int precision, int scale) {
+            super(name, columnNumber);
+            this.precision = precision;
+            this.scale = scale;
+        }
+
+        @Override
+        protected boolean fetchValue(ResultSet resultSet, int columnNumber) throws SQLException {
+            final BigDecimal value = resultSet.getBigDecimal(columnNumber);
+            if (value == null) {
+                return false;
+            }
+            try {
+                unscaledValue = value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue();
+            } catch (ArithmeticException e) {
+                throw newOutOfRangeException(value);
+            }
+            if (unscaledValue.abs().toString().length() > precision) {
+                throw newOutOfRangeException(value);
+            }
+            return true;
+        }
+
+        private IllegalStateException newOutOfRangeException(BigDecimal value) {
+            return new IllegalStateException(String.format(
+                    "Value %s of column %s doesn't fit DECIMAL(%d, %d), cast the column in the select list",
+                    value.toPlainString(), getName(), precision, scale));
+        }
+    }
+
+    private static final class DecimalColumn extends AbstractDecimalColumn {
+
+        private DecimalColumn(String name, int columnNumber, int precision, int scale) {
+            super(name, columnNumber, precision, scale);
+        }
+
+        @Override
+        PrimitiveType getType() {
+            return Types.optional(PrimitiveType.PrimitiveTypeName.INT64)
+                    .as(LogicalTypeAnnotation.decimalType(scale, precision))
+                    .named(getName());
+        }
+
+        @Override
+        protected void addValue(RecordConsumer recordConsumer) {
+            recordConsumer.addLong(unscaledValue.longValue());
+        }
+    }
+
+    /**
+     * Stores unscaled values as big-endian two's complement bytes
+     */
+    private static final class BinaryDecimalColumn extends AbstractDecimalColumn {
+
+        private BinaryDecimalColumn(String name, int columnNumber, int precision, int scale) {
+            super(name, columnNumber, precision, scale);
+        }
+
+        @Override
+        PrimitiveType getType() {
+            return Types.optional(PrimitiveType.PrimitiveTypeName.BINARY)
+                    .as(LogicalTypeAnnotation.decimalType(scale, precision))
+                    .named(getName());
+        }
+
+        @Override
+        protected void addValue(RecordConsumer recordConsumer) {
+            recordConsumer.addBinary(Binary.fromConstantByteArray(unscaledValue.toByteArray()));
+        }
+    }
+
+    private static final class DoubleColumn extends ParquetColumn {
+        private double value;
+
+        private DoubleColumn(String name, int columnNumber) {
+            super(name, columnNumber);
+        }
+
+        @Override
+        PrimitiveType getType() {
+            return Types.optional(PrimitiveType.PrimitiveTypeName.DOUBLE).named(getName());
+        }
+
+        @Override
+        protected boolean fetchValue(ResultSet resultSet, int columnNumber) throws SQLException {
+            value = resultSet.getDouble(columnNumber);
+            return !resultSet.wasNull();
+        }
+
+        @Override
+        protected void addValue(RecordConsumer recordConsumer) {
+            recordConsumer.addDouble(value);
+        }
+    }
+
+    /**
+     * Stores milliseconds of the local date and time since the epoch, without a time zone
+     */
+    private static final class TimestampColumn extends ParquetColumn {
+        private final TimeZone timeZone = TimeZone.getDefault();
+        private long value;
+
+        private TimestampColumn(String name, int columnNumber) {
+            super(name, columnNumber);
+        }
+
+        @Override
+        PrimitiveType getType() {
+            return Types.optional(PrimitiveType.PrimitiveTypeName.INT64)
+                    .as(LogicalTypeAnnotation.timestampType(false, LogicalTypeAnnotation.TimeUnit.MILLIS))
+                    .named(getName());
+        }
+
+        @Override
+        protected boolean fetchValue(ResultSet resultSet, int columnNumber) throws SQLException {
+            final Timestamp timestamp = resultSet.getTimestamp(columnNumber);
+            if (timestamp == null) {
+                return false;
+            }
+            final long millis = timestamp.getTime();
+            value = millis + timeZone.getOffset(millis);
+            return true;
+        }
+
+        @Override
+        protected void addValue(RecordConsumer recordConsumer) {
+            recordConsumer.addLong(value);
+        }
+    }
+
+    private static final class StringColumn extends ParquetColumn {
+        private String value;
+
+        private StringColumn(String name, int columnNumber) {
+            super(name, columnNumber);
+        }
+
+        @Override
+        PrimitiveType getType() {
+            return Types.optional(PrimitiveType.PrimitiveTypeName.BINARY)
+                    .as(LogicalTypeAnnotation.stringType())
+                    .named(getName());
+        }
+
+        @Override
+        protected boolean fetchValue(ResultSet resultSet, int columnNumber) throws SQLException {
+            value = resultSet.getString(columnNumber);
+            return value != null;
+        }
+
+        @Override
+        protected void addValue(RecordConsumer recordConsumer) {
+            recordConsumer.addBinary(Binary.fromString(value));
+        }
+    }
+}
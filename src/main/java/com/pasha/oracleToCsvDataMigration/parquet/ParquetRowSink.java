@@ -0,0 +1,187 @@
+package com.pasha.oracleToCsvDataMigration.parquet;
+
+import com.pasha.oracleToCsvDataMigration.executor.IRowCursor;
+import com.pasha.oracleToCsvDataMigration.executor.IRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.MeteredChannel;
+import com.pasha.oracleToCsvDataMigration.executor.OutputCompression;
+import com.pasha.oracleToCsvDataMigration.executor.OutputFile;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes rows as a Parquet file with typed columns, see {@link ParquetColumn} for the type mapping.
+ * <p>
+ * The file is written by parquet-hadoop: row groups of {@link #DEFAULT_ROW_GROUP_SIZE} with dictionary
+ * encoded pages and page statistics, compressed with the compression of the run. The footer is written
+ * on close, so a file of an interrupted task can't be continued and the task is restarted on resume.
+ * The file gets its final name on {@link #commit(long)}, see {@link OutputFile}.
+ * <p>
+ * Not thread safe
+ */
+public final class ParquetRowSink implements IRowSink {
+
+    public static final String FILE_EXTENSION = ".parquet";
+
+    private static final int DEFAULT_ROW_GROUP_SIZE = 1 << 25;
+    /**
+     * Time and rows are added to the metrics that often
+     */
+    private static final int ROWS_PER_METRICS_UPDATE = 1 << 10;
+
+    private final OutputFile outputFile;
+    private final MeteredChannel channel;
+    private final OutputCompression compression;
+    private final MigrationMetrics metrics;
+    private final int rowGroupSize;
+    private ParquetColumn[] columns;
+    /**
+     * Created with the schema of the first result set
+     */
+    private ParquetWriter<ParquetColumn[]> writer;
+
+    public ParquetRowSink(String path, OutputCompression compression, MigrationMetrics metrics) {
+        this(path, compression, metrics, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    ParquetRowSink(String path, OutputCompression compression, MigrationMetrics metrics, int rowGroupSize) {
+        this.compression = compression;
+        this.metrics = metrics;
+        this.rowGroupSize = rowGroupSize;
+        this.outputFile = OutputFile.open(path, 0);
+        this.channel = new MeteredChannel(outputFile, metrics);
+    }
+
+    @Override
+    public long writeRows(ResultSet resultSet, IRowCursor rowCursor) throws SQLException {
+        if (writer == null) {
+            columns = ParquetColumn.fromMetaData(resultSet.getMetaData());
+            writer = openWriter();
+        }
+        long countWrittenRows = 0;
+        long fetchNanos = 0;
+        long encodeNanos = 0;
+        long startNanos = System.nanoTime();
+        try {
+            while (rowCursor.next(resultSet)) {
+                for (ParquetColumn column : columns) {
+                    column.fetch(resultSet);
+                }
+                final long fetchedNanos = System.nanoTime();
+                fetchNanos += fetchedNanos - startNanos;
+                writer.write(columns);
+                startNanos = System.nanoTime();
+                encodeNanos += startNanos - fetchedNanos;
+                if (++countWrittenRows % ROWS_PER_METRICS_UPDATE == 0) {
+                    metrics.addFetched(ROWS_PER_METRICS_UPDATE, fetchNanos);
+                    metrics.addEncoded(encodeNanos);
+                    fetchNanos = 0;
+                    encodeNanos = 0;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        metrics.addFetched(countWrittenRows % ROWS_PER_METRICS_UPDATE, fetchNanos + System.nanoTime() - startNanos);
+        metrics.addEncoded(encodeNanos);
+        return countWrittenRows;
+    }
+
+    /**
+     * Rows are kept in memory until the row group is full, and the file is readable only after close
+     *
+     * @return always 0
+     */
+    @Override
+    public long checkpoint() {
+        return 0;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return channel.getBytesWritten();
+    }
+
+    /**
+     * The schema is taken from the result sets, so at least one query has to be exported,
+     * even an empty one
+     */
+    @Override
+    public void commit(long rowCount) {
+        if (writer == null) {
+            close();
+            throw new IllegalStateException("No query is exported, the schema of the file is unknown");
+        }
+        close();
+        outputFile.commit(rowCount);
+    }
+
+    @Override
+    public void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            // A file without the schema is never committed, it is left without the footer
+            if (writer != null) {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private ParquetWriter<ParquetColumn[]> openWriter() {
+        try {
+            return new Builder(new ChannelOutputFile(channel), columns)
+                    .withCompressionCodec(getCodec())
+                    .withRowGroupSize(rowGroupSize)
+                    .withDictionaryEncoding(true)
+                    .build();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private CompressionCodecName getCodec() {
+        switch (compression) {
+            case GZIP:
+                return CompressionCodecName.GZIP;
+            case ZSTD:
+                return CompressionCodecName.ZSTD;
+            default:
+                return CompressionCodecName.UNCOMPRESSED;
+        }
+    }
+
+    private static final class Builder extends ParquetWriter.Builder<ParquetColumn[], Builder> {
+        private final ParquetColumn[] columns;
+
+        private Builder(org.apache.parquet.io.OutputFile file, ParquetColumn[] columns) {
+            super(file);
+            this.columns = columns;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<ParquetColumn[]> getWriteSupport(Configuration configuration) {
+            return new RowWriteSupport(columns);
+        }
+    }
+}
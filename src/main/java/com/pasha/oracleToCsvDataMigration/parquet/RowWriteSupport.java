@@ -0,0 +1,50 @@
+package com.pasha.oracleToCsvDataMigration.parquet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes the values the columns have fetched from the current row as a record,
+ * the schema is the one of the columns
+ */
+final class RowWriteSupport extends WriteSupport<ParquetColumn[]> {
+
+    private static final String SCHEMA_NAME = "schema";
+
+    private final ParquetColumn[] columns;
+    private RecordConsumer recordConsumer;
+
+    RowWriteSupport(ParquetColumn[] columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+        final List<Type> fields = new ArrayList<>(columns.length);
+        for (ParquetColumn column : columns) {
+            fields.add(column.getType());
+        }
+        return new WriteContext(new MessageType(SCHEMA_NAME, fields), Collections.emptyMap());
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        this.recordConsumer = recordConsumer;
+    }
+
+    @Override
+    public void write(ParquetColumn[] row) {
+        recordConsumer.startMessage();
+        for (int i = 0; i < row.length; ++i) {
+            row[i].write(recordConsumer, i);
+        }
+        recordConsumer.endMessage();
+    }
+}
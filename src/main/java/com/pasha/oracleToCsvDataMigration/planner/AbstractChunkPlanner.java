@@ -0,0 +1,57 @@
+package com.pasha.oracleToCsvDataMigration.planner;
+
+import com.pasha.oracleToCsvDataMigration.config.ShardRouter;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+public abstract class AbstractChunkPlanner implements IChunkPlanner {
+
+    /**
+     * Separate subqueries, so each of them is a single probe of the SUBS_SUBS_ID index
+     * (INDEX FULL SCAN (MIN/MAX)) instead of a scan of the whole index or table
+     */
+    private static final String MIN_MAX_SUBS_ID_QUERY_TEMPLATE
+            = "SELECT (SELECT MIN(SUBS_SUBS_ID) FROM %1$s) MIN_SUBS_ID, " +
+            "(SELECT MAX(SUBS_SUBS_ID) FROM %1$s) MAX_SUBS_ID FROM DUAL";
+    protected final ShardRouter shardRouter;
+    protected final TableStatistics tableStatistics;
+
+    protected AbstractChunkPlanner(ShardRouter shardRouter, TableStatistics tableStatistics) {
+        this.shardRouter = shardRouter;
+        this.tableStatistics = tableStatistics;
+    }
+
+    /**
+     * Min and max SUBS_SUBS_ID values of the table.
+     * Values specified by the minSubsId and maxSubsId params are used as is
+     *
+     * @return list of min and max values, both are null for an empty table
+     */
+    protected List<BigDecimal> findMinAndMaxSubsIds(String tableName, MigrationParams params) {
+        BigDecimal minSubsId = params.getMinSubsId();
+        BigDecimal maxSubsId = params.getMaxSubsId();
+        if (minSubsId == null || maxSubsId == null) {
+            log.info("Searching for min and max SUBS_SUBS_ID values of {}", tableName);
+            String query = String.format(MIN_MAX_SUBS_ID_QUERY_TEMPLATE, tableName);
+            SqlRowSet sqlRowSet = shardRouter.getJdbcTemplate(tableName).queryForRowSet(query);
+            sqlRowSet.next();
+            if (minSubsId == null) {
+                minSubsId = sqlRowSet.getBigDecimal("MIN_SUBS_ID");
+            }
+            if (maxSubsId == null) {
+                maxSubsId = sqlRowSet.getBigDecimal("MAX_SUBS_ID");
+            }
+            log.info("Min SUBS_SUBS_ID value: {}. Max SUBS_SUBS_ID value: {}", minSubsId, maxSubsId);
+        }
+        List<BigDecimal> res = new ArrayList<>(2);
+        res.add(minSubsId);
+        res.add(maxSubsId);
+        return res;
+    }
+}
@@ -0,0 +1,21 @@
+package com.pasha.oracleToCsvDataMigration.planner;
+
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+
+import java.util.List;
+
+/**
+ * Splits a table into SUBS_SUBS_ID ranges which are migrated by separate tasks
+ */
+public interface IChunkPlanner {
+
+    /**
+     * Name of the planner as specified in the chunkPlanner param
+     */
+    String getName();
+
+    /**
+     * @return chunks covering all rows of the table, empty list for an empty table
+     */
+    List<TableChunk> plan(String tableName, MigrationParams params);
+}
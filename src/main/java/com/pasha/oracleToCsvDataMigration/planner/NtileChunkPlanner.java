@@ -0,0 +1,99 @@
+package com.pasha.oracleToCsvDataMigration.planner;
+
+import com.pasha.oracleToCsvDataMigration.config.ShardRouter;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the table by NTILE percentiles of SUBS_SUBS_ID, so every chunk has about the same
+ * number of rows however ids are distributed. Costs one pass over the SUBS_SUBS_ID values
+ */
+@Slf4j
+@Component
+public class NtileChunkPlanner extends AbstractChunkPlanner {
+
+    public static final String NAME = "ntile";
+
+    private static final String NTILE_QUERY_TEMPLATE =
+            "SELECT MIN(SUBS_SUBS_ID) MIN_SUBS_ID, COUNT(*) ROW_COUNT FROM (" +
+                    "SELECT SUBS_SUBS_ID, NTILE(?) OVER (ORDER BY SUBS_SUBS_ID) BUCKET " +
+                    "FROM %s%s WHERE SUBS_SUBS_ID BETWEEN ? AND ?) " +
+                    "GROUP BY BUCKET ORDER BY BUCKET";
+
+    @Autowired
+    public NtileChunkPlanner(ShardRouter shardRouter, TableStatistics tableStatistics) {
+        super(shardRouter, tableStatistics);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<TableChunk> plan(String tableName, MigrationParams params) {
+        List<BigDecimal> minAndMaxSubsIds = findMinAndMaxSubsIds(tableName, params);
+        BigDecimal minSubsId = minAndMaxSubsIds.get(0);
+        BigDecimal maxSubsId = minAndMaxSubsIds.get(1);
+        List<TableChunk> chunks = new ArrayList<>();
+        if (minSubsId == null || maxSubsId == null) {
+            return chunks;
+        }
+
+        log.info("Searching for {} percentiles of SUBS_SUBS_ID in {}", params.getNumTableChunks(), tableName);
+        String query = String.format(NTILE_QUERY_TEMPLATE, tableName, getSampleClause());
+        List<Bucket> buckets = shardRouter.getJdbcTemplate(tableName).query(query,
+                (rs, rowNum) -> new Bucket(rs.getBigDecimal("MIN_SUBS_ID"), rs.getLong("ROW_COUNT")),
+                params.getNumTableChunks(), minSubsId, maxSubsId);
+        if (buckets.isEmpty()) {
+            // Nothing was sampled, the whole range becomes one chunk
+            buckets.add(new Bucket(minSubsId, TableChunk.UNKNOWN_ROW_COUNT));
+        }
+
+        // The same id can be split between buckets, such buckets are merged
+        final BigDecimal endSubsId = maxSubsId.add(BigDecimal.ONE);
+        for (int i = 0; i < buckets.size(); ++i) {
+            BigDecimal firstSubsId = i == 0 ? minSubsId : buckets.get(i).minSubsId;
+            long rowCount = estimateRowCount(buckets.get(i).rowCount);
+            int next = i + 1;
+            while (next < buckets.size() && buckets.get(next).minSubsId.compareTo(firstSubsId) <= 0) {
+                rowCount += estimateRowCount(buckets.get(next).rowCount);
+                ++next;
+            }
+            BigDecimal lastSubsId = next < buckets.size() ? buckets.get(next).minSubsId : endSubsId;
+            chunks.add(new TableChunk(tableName, firstSubsId, lastSubsId, rowCount));
+            i = next - 1;
+        }
+        return chunks;
+    }
+
+    /**
+     * Sample clause appended to the table name, empty to read all rows
+     */
+    protected String getSampleClause() {
+        return "";
+    }
+
+    /**
+     * Converts a number of rows seen in a bucket to the number of rows in the table
+     */
+    protected long estimateRowCount(long bucketRowCount) {
+        return bucketRowCount;
+    }
+
+    private static final class Bucket {
+        private final BigDecimal minSubsId;
+        private final long rowCount;
+
+        private Bucket(BigDecimal minSubsId, long rowCount) {
+            this.minSubsId = minSubsId;
+            this.rowCount = rowCount;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.pasha.oracleToCsvDataMigration.planner;
+
+import com.pasha.oracleToCsvDataMigration.config.ShardRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Same as {@link NtileChunkPlanner}, but percentiles are built from a random sample of blocks,
+ * which builds a histogram of SUBS_SUBS_ID without reading the whole table
+ */
+@Component
+public final class SampleChunkPlanner extends NtileChunkPlanner {
+
+    public static final String NAME = "sample";
+
+    private static final int SAMPLE_PERCENT = 1;
+    private static final String SAMPLE_CLAUSE = " SAMPLE BLOCK (" + SAMPLE_PERCENT + ")";
+
+    @Autowired
+    public SampleChunkPlanner(ShardRouter shardRouter, TableStatistics tableStatistics) {
+        super(shardRouter, tableStatistics);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected String getSampleClause() {
+        return SAMPLE_CLAUSE;
+    }
+
+    @Override
+    protected long estimateRowCount(long bucketRowCount) {
+        return bucketRowCount < 0 ? bucketRowCount : bucketRowCount * 100 / SAMPLE_PERCENT;
+    }
+}
@@ -0,0 +1,37 @@
+package com.pasha.oracleToCsvDataMigration.planner;
+
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Range of SUBS_SUBS_ID values of one table which is migrated by one task
+ */
+@Getter
+public final class TableChunk {
+
+    public static final long UNKNOWN_ROW_COUNT = -1;
+
+    private final String tableName;
+    /**
+     * Inclusive
+     */
+    private final BigDecimal firstSubsId;
+    /**
+     * Exclusive
+     */
+    private final BigDecimal lastSubsId;
+    private final long estimatedRowCount;
+
+    public TableChunk(String tableName, BigDecimal firstSubsId, BigDecimal lastSubsId, long estimatedRowCount) {
+        this.tableName = tableName;
+        this.firstSubsId = firstSubsId;
+        this.lastSubsId = lastSubsId;
+        this.estimatedRowCount = estimatedRowCount;
+    }
+
+    @Override
+    public String toString() {
+        return tableName + " [" + firstSubsId + ", " + lastSubsId + "), ~" + estimatedRowCount + " rows";
+    }
+}
@@ -0,0 +1,39 @@
+package com.pasha.oracleToCsvDataMigration.planner;
+
+import com.pasha.oracleToCsvDataMigration.config.ShardRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Reads optimizer statistics of migrated tables
+ */
+@Component
+public class TableStatistics {
+
+    private static final String NUM_ROWS_QUERY
+            = "SELECT NUM_ROWS FROM ALL_TABLES WHERE TABLE_NAME = UPPER(?) AND OWNER = NVL(UPPER(?), USER)";
+    private static final String SCHEMA_DELIMITER = ".";
+
+    private final ShardRouter shardRouter;
+
+    @Autowired
+    public TableStatistics(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Number of rows of the table according to optimizer statistics
+     *
+     * @return {@link TableChunk#UNKNOWN_ROW_COUNT} when the table has no statistics
+     */
+    public long findRowCount(String tableName) {
+        final int schemaDelimiterIndex = tableName.indexOf(SCHEMA_DELIMITER);
+        final String owner = schemaDelimiterIndex < 0 ? null : tableName.substring(0, schemaDelimiterIndex);
+        final String table = tableName.substring(schemaDelimiterIndex + 1);
+        final List<Long> numRows = shardRouter.getJdbcTemplate(tableName)
+                .queryForList(NUM_ROWS_QUERY, Long.class, table, owner);
+        return numRows.isEmpty() || numRows.get(0) == null ? TableChunk.UNKNOWN_ROW_COUNT : numRows.get(0);
+    }
+}
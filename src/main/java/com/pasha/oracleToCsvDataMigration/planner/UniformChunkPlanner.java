@@ -0,0 +1,62 @@
+package com.pasha.oracleToCsvDataMigration.planner;
+
+import com.pasha.oracleToCsvDataMigration.config.ShardRouter;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits [min, max] SUBS_SUBS_ID range into numTableChunks ranges of equal width.
+ * Cheap, but chunks are balanced only when ids are evenly distributed
+ */
+@Component
+public final class UniformChunkPlanner extends AbstractChunkPlanner {
+
+    public static final String NAME = "uniform";
+
+    @Autowired
+    public UniformChunkPlanner(ShardRouter shardRouter, TableStatistics tableStatistics) {
+        super(shardRouter, tableStatistics);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<TableChunk> plan(String tableName, MigrationParams params) {
+        List<BigDecimal> minAndMaxSubsIds = findMinAndMaxSubsIds(tableName, params);
+        BigDecimal minSubsId = minAndMaxSubsIds.get(0);
+        BigDecimal maxSubsId = minAndMaxSubsIds.get(1);
+        List<TableChunk> chunks = new ArrayList<>();
+        if (minSubsId == null || maxSubsId == null) {
+            return chunks;
+        }
+
+        BigDecimal stepSubsId = calculateStep(minSubsId, maxSubsId, params.getNumTableChunks());
+        long tableRowCount = tableStatistics.findRowCount(tableName);
+        long estimatedRowCount = tableRowCount == TableChunk.UNKNOWN_ROW_COUNT ?
+                TableChunk.UNKNOWN_ROW_COUNT :
+                tableRowCount / params.getNumTableChunks();
+
+        BigDecimal currentSubsId = minSubsId;
+        while (currentSubsId.compareTo(maxSubsId) <= 0) {
+            BigDecimal nextSubsId = currentSubsId.add(stepSubsId);
+            chunks.add(new TableChunk(tableName, currentSubsId, nextSubsId, estimatedRowCount));
+            currentSubsId = nextSubsId;
+        }
+        return chunks;
+    }
+
+    private BigDecimal calculateStep(BigDecimal min, BigDecimal max, Integer numOfChunks) {
+        BigDecimal step = max.subtract(min).divide(BigDecimal.valueOf(numOfChunks), RoundingMode.UP);
+        // Ranges are [from, to), so a table with a single id still needs a non empty step
+        return step.signum() > 0 ? step : BigDecimal.ONE;
+    }
+}
@@ -0,0 +1,174 @@
+package com.pasha.oracleToCsvDataMigration.stream;
+
+import com.pasha.oracleToCsvDataMigration.executor.IRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.ISharedOutput;
+import com.pasha.oracleToCsvDataMigration.executor.MeteredChannel;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the rows of all the tasks of a run to one consumer process, so the export and the load overlap
+ * and the rows never touch the disk.
+ * <p>
+ * {@code streamTo} is {@value #STDOUT}, {@code tcp:<host>:<port>} or the path of a named pipe made
+ * by {@code mkfifo}. With {@value #STDOUT} the log has to go elsewhere, e.g. {@code -DLOG_TARGET=System.err}.
+ * Writes block while the consumer does not read, which holds the tasks back.
+ * <p>
+ * The rows of every query, a chunk slice or a whole table, are a csv document with its own header,
+ * sent as a stream of frames. Frames of the queries which run at the same time are interleaved.
+ * A frame is a type byte, a big endian int id of the query, a big endian int length and the payload:
+ * <ul>
+ * <li>{@code B} a query begins: table name, first and last SUBS_SUBS_ID of a chunk slice, tab separated</li>
+ * <li>{@code D} csv bytes of the query</li>
+ * <li>{@code E} the query is complete: number of rows</li>
+ * <li>{@code A} the query failed, its rows have to be discarded</li>
+ * <li>{@code Z} the run is complete, sent once with query id 0: number of queries</li>
+ * </ul>
+ * A stream which ends without {@code Z} is of a failed run.
+ * <p>
+ * Thread safe
+ */
+@Slf4j
+public final class StreamOutput implements ISharedOutput {
+
+    public static final String STDOUT = "stdout";
+    public static final String TCP_PREFIX = "tcp:";
+
+    static final byte BEGIN = 'B';
+    static final byte DATA = 'D';
+    static final byte END = 'E';
+    static final byte ABORT = 'A';
+    static final byte RUN_END = 'Z';
+    static final String FIELD_DELIMITER = "\t";
+
+    private static final int FRAME_HEADER_SIZE = 9;
+
+    private final MigrationParams params;
+    private final MigrationMetrics metrics;
+    private final WritableByteChannel channel;
+    private final ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+    private int lastQueryId;
+    /**
+     * A write has failed, a part of a frame may be sent, so the consumer can't read any frame after it
+     */
+    private boolean broken;
+
+    private StreamOutput(MigrationParams params, MigrationMetrics metrics, WritableByteChannel channel) {
+        this.params = params;
+        this.metrics = metrics;
+        this.channel = channel;
+    }
+
+    /**
+     * Connects to the consumer, blocks until a reader opens the named pipe
+     */
+    public static StreamOutput open(MigrationParams params, MigrationMetrics metrics) {
+        final String streamTo = params.getStreamTo();
+        final WritableByteChannel channel;
+        try {
+            if (STDOUT.equalsIgnoreCase(streamTo)) {
+                channel = new FileOutputStream(FileDescriptor.out).getChannel();
+            } else if (streamTo.startsWith(TCP_PREFIX)) {
+                final String address = streamTo.substring(TCP_PREFIX.length());
+                final int portIndex = address.lastIndexOf(':');
+                if (portIndex < 0) {
+                    throw new IllegalArgumentException("Wrong streamTo format, expected tcp:<host>:<port>: " + streamTo);
+                }
+                channel = SocketChannel.open(new InetSocketAddress(
+                        address.substring(0, portIndex), Integer.parseInt(address.substring(portIndex + 1))));
+            } else {
+                log.info("Waiting for a reader of {}", streamTo);
+                channel = Files.newByteChannel(Paths.get(streamTo), StandardOpenOption.WRITE);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Rows of all tables are streamed to {}", streamTo);
+        return new StreamOutput(params, metrics, new MeteredChannel(channel, metrics));
+    }
+
+    @Override
+    public IRowSink openRowSink(String tableName) {
+        return new StreamRowSink(this, tableName, params, metrics);
+    }
+
+    /**
+     * Tells the consumer that all the queries are sent
+     */
+    @Override
+    public void commit() {
+        final int countQueries;
+        synchronized (this) {
+            countQueries = lastQueryId;
+        }
+        writeFrame(RUN_END, 0, Integer.toString(countQueries));
+        log.info("{} queries are streamed to {}", countQueries, params.getStreamTo());
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    synchronized int nextQueryId() {
+        return ++lastQueryId;
+    }
+
+    synchronized boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * @return bytes written, including the frame header
+     */
+    long writeFrame(byte type, int queryId, String payload) {
+        return writeFrame(type, queryId, ByteBuffer.wrap(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes the frame whole, blocking while the consumer does not read.
+     * Nothing is written after a failed write
+     *
+     * @return bytes written, including the frame header
+     */
+    synchronized long writeFrame(byte type, int queryId, ByteBuffer payload) {
+        if (broken) {
+            throw new IllegalStateException("The stream to " + params.getStreamTo() + " is broken by a failed write");
+        }
+        final int length = payload.remaining();
+        frameHeader.clear();
+        frameHeader.put(type).putInt(queryId).putInt(length).flip();
+        boolean written = false;
+        try {
+            while (frameHeader.hasRemaining()) {
+                channel.write(frameHeader);
+            }
+            while (payload.hasRemaining()) {
+                channel.write(payload);
+            }
+            written = true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            broken = !written;
+        }
+        return FRAME_HEADER_SIZE + length;
+    }
+}
@@ -0,0 +1,148 @@
+package com.pasha.oracleToCsvDataMigration.stream;
+
+import com.pasha.oracleToCsvDataMigration.executor.CsvRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.CsvWriter;
+import com.pasha.oracleToCsvDataMigration.executor.IRowCursor;
+import com.pasha.oracleToCsvDataMigration.executor.IRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Sends the rows of every query of a task to {@link StreamOutput} as frames of its own query id.
+ * The queries of the task are encoded one after another into the same buffer
+ */
+final class StreamRowSink implements IRowSink {
+
+    /**
+     * Largest data frame, the csv is encoded into a buffer of this size
+     */
+    private static final int FRAME_SIZE = 1 << 18;
+    private static final Object[] NO_RANGE = new Object[0];
+
+    private final StreamOutput output;
+    private final String tableName;
+    private final MigrationParams params;
+    private final MigrationMetrics metrics;
+    private final DataFrameChannel dataFrameChannel = new DataFrameChannel();
+    private final CsvWriter csvWriter = new CsvWriter(dataFrameChannel, FRAME_SIZE);
+    private Object[] range = NO_RANGE;
+    private long bytesWritten;
+
+    StreamRowSink(StreamOutput output, String tableName, MigrationParams params, MigrationMetrics metrics) {
+        this.output = output;
+        this.tableName = tableName;
+        this.params = params;
+        this.metrics = metrics;
+    }
+
+    /**
+     * The bind values of the query are the range sent in its begin frame
+     */
+    @Override
+    public long export(JdbcTemplate jdbcTemplate, String query, IRowCursor rowCursor, Object... args) {
+        range = args;
+        return IRowSink.super.export(jdbcTemplate, query, rowCursor, args);
+    }
+
+    /**
+     * A query which fails is aborted, unless the stream is broken and the consumer can't read the abort frame
+     */
+    @Override
+    public long writeRows(ResultSet resultSet, IRowCursor rowCursor) throws SQLException {
+        final int queryId = output.nextQueryId();
+        bytesWritten += output.writeFrame(StreamOutput.BEGIN, queryId, formatBegin());
+        try {
+            // Every query is a csv document with its own header, bytes left by a failed query are dropped
+            csvWriter.reset();
+            dataFrameChannel.queryId = queryId;
+            final long countWrittenRows = new CsvRowSink(csvWriter, params, metrics).writeRows(resultSet, rowCursor);
+            csvWriter.flush();
+            bytesWritten += output.writeFrame(StreamOutput.END, queryId, Long.toString(countWrittenRows));
+            return countWrittenRows;
+        } catch (Throwable e) {
+            if (!output.isBroken()) {
+                try {
+                    bytesWritten += output.writeFrame(StreamOutput.ABORT, queryId, "");
+                } catch (RuntimeException abortFailure) {
+                    e.addSuppressed(abortFailure);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return 0, streamed rows can't be continued by a resumed task
+     */
+    @Override
+    public long checkpoint() {
+        return 0;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Every query is complete with its end frame
+     */
+    @Override
+    public void commit(long rowCount) {
+    }
+
+    /**
+     * The stream stays open for the other tasks
+     */
+    @Override
+    public void close() {
+    }
+
+    private String formatBegin() {
+        final StringBuilder begin = new StringBuilder(tableName);
+        for (int i = 0; i < 2; ++i) {
+            begin.append(StreamOutput.FIELD_DELIMITER);
+            if (i < range.length) {
+                begin.append(range[i] instanceof BigDecimal ?
+                        ((BigDecimal) range[i]).toPlainString() :
+                        String.valueOf(range[i]));
+            }
+        }
+        return begin.toString();
+    }
+
+    /**
+     * Wraps the drained csv buffer of the current query into a data frame
+     */
+    private final class DataFrameChannel implements WritableByteChannel {
+        private int queryId;
+        private boolean open = true;
+
+        @Override
+        public int write(ByteBuffer src) {
+            final int length = src.remaining();
+            bytesWritten += output.writeFrame(StreamOutput.DATA, queryId, src);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * The stream stays open, the query is ended by the sink
+         */
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
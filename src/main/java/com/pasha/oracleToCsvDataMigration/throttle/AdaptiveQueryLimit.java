@@ -0,0 +1,95 @@
+package com.pasha.oracleToCsvDataMigration.throttle;
+
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Number of queries in flight, adjusted by additive increase and multiplicative decrease.
+ * <p>
+ * The signal is the time a query takes per returned row, so chunk slices and whole tables of different
+ * sizes are comparable. The baseline is the best time seen, drifting slowly towards the recent ones,
+ * so a single lucky query does not keep the limit down for the rest of the run. While queries are
+ * not slower than {@value #LATENCY_TOLERANCE} times the baseline, the limit grows by one after
+ * {@code limit} queries which ran at the full limit. A slower query cuts the limit
+ * by {@value #DECREASE_FACTOR}, at most once per query duration, so the queries which were already
+ * running when the database slowed down don't cut it again.
+ * <p>
+ * The time includes writing the rows, so a slow disk lowers the limit as well
+ */
+@Slf4j
+final class AdaptiveQueryLimit {
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double DECREASE_FACTOR = 0.75;
+    /**
+     * Share of a query in the baseline when it is slower than the baseline
+     */
+    private static final double BASELINE_DRIFT = 0.01;
+    /**
+     * Queries with fewer rows are dominated by the round trip and are not measured
+     */
+    private static final long MIN_MEASURED_ROWS = 1_000;
+
+    private final int maxLimit;
+    private final MigrationMetrics metrics;
+    private int limit;
+    private int inFlight;
+    private int fullLimitQueries;
+    private double baselineNanosPerRow = Double.NaN;
+    private long lastDecreaseNanos;
+
+    /**
+     * Starts at half of {@code maxLimit}
+     */
+    AdaptiveQueryLimit(int maxLimit, MigrationMetrics metrics) {
+        this.maxLimit = maxLimit;
+        this.metrics = metrics;
+        this.limit = (maxLimit + 1) / 2;
+        metrics.setQueryLimit(limit);
+    }
+
+    synchronized void acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+        ++inFlight;
+    }
+
+    /**
+     * @param rows rows returned by the query, 0 if it failed
+     */
+    synchronized void release(long nanos, long rows) {
+        final boolean atFullLimit = inFlight >= limit;
+        --inFlight;
+        notifyAll();
+        if (rows < MIN_MEASURED_ROWS) {
+            return;
+        }
+        final double nanosPerRow = (double) nanos / rows;
+        if (Double.isNaN(baselineNanosPerRow) || nanosPerRow < baselineNanosPerRow) {
+            baselineNanosPerRow = nanosPerRow;
+        } else {
+            baselineNanosPerRow += (nanosPerRow - baselineNanosPerRow) * BASELINE_DRIFT;
+        }
+        final long nowNanos = System.nanoTime();
+        if (nanosPerRow > baselineNanosPerRow * LATENCY_TOLERANCE) {
+            fullLimitQueries = 0;
+            if (limit > 1 && nowNanos - lastDecreaseNanos > nanos) {
+                lastDecreaseNanos = nowNanos;
+                setLimit(Math.max(1, (int) (limit * DECREASE_FACTOR)));
+                log.debug("Queries are slower, {} us per row against {} us. Query limit is lowered to {}",
+                        Math.round(nanosPerRow / 1e3), Math.round(baselineNanosPerRow / 1e3), limit);
+            }
+        } else if (atFullLimit && limit < maxLimit && ++fullLimitQueries >= limit) {
+            fullLimitQueries = 0;
+            setLimit(limit + 1);
+            log.debug("Query limit is raised to {}", limit);
+        }
+    }
+
+    private void setLimit(int limit) {
+        this.limit = limit;
+        metrics.setQueryLimit(limit);
+        notifyAll();
+    }
+}
@@ -0,0 +1,121 @@
+package com.pasha.oracleToCsvDataMigration.throttle;
+
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the load of a run on the source databases within limits. Every query of a task waits here
+ * for the rate limit of its shard and then for a free place under the query limit of the run.
+ * <p>
+ * The query limit is {@code numThreads} unless the concurrency is adaptive, see {@link AdaptiveQueryLimit}.
+ * The rate limit is {@code maxRowsPerSecond} per shard, so a shard which is slowed down does not
+ * take the allowance of the others. Both are checked between queries, so they need the tables
+ * to be read in chunk slices, a whole table is one query.
+ * <p>
+ * Thread safe
+ */
+@Slf4j
+public final class QueryThrottle {
+
+    /**
+     * Lets all the queries through
+     */
+    public static final QueryThrottle NONE = new QueryThrottle(null, 0, null);
+
+    private static final char SHARD_AND_PARTITION_DELIMITER = '_';
+
+    /**
+     * Null when the concurrency is not adaptive
+     */
+    private final AdaptiveQueryLimit queryLimit;
+    private final long maxRowsPerSecond;
+    private final MigrationMetrics metrics;
+    private final ConcurrentMap<String, RowRateLimit> shardRateLimits = new ConcurrentHashMap<>();
+
+    private QueryThrottle(AdaptiveQueryLimit queryLimit, long maxRowsPerSecond, MigrationMetrics metrics) {
+        this.queryLimit = queryLimit;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param adaptiveConcurrency whether the number of queries in flight is adjusted to their latency,
+     *                            between 1 and {@code numWorkers}
+     * @param maxRowsPerSecond    rows per second of a shard, 0 for no limit
+     */
+    public static QueryThrottle create(
+            boolean adaptiveConcurrency,
+            long maxRowsPerSecond,
+            int numWorkers,
+            MigrationMetrics metrics) {
+        if (!adaptiveConcurrency) {
+            metrics.setQueryLimit(numWorkers);
+        }
+        if (!adaptiveConcurrency && maxRowsPerSecond <= 0) {
+            return NONE;
+        }
+        if (adaptiveConcurrency) {
+            log.info("Queries in flight are adjusted to their latency, up to {}", numWorkers);
+        }
+        if (maxRowsPerSecond > 0) {
+            log.info("Rows read from a shard are limited to {} per second", maxRowsPerSecond);
+        }
+        return new QueryThrottle(
+                adaptiveConcurrency ? new AdaptiveQueryLimit(numWorkers, metrics) : null,
+                Math.max(0, maxRowsPerSecond),
+                metrics);
+    }
+
+    /**
+     * Waits until a query of the table may start. Every call must be followed by {@link #release}
+     */
+    public void acquire(String tableName) {
+        if (this == NONE) {
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        try {
+            if (maxRowsPerSecond > 0) {
+                getShardRateLimit(tableName).acquire();
+            }
+            if (queryLimit != null) {
+                queryLimit.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            metrics.addThrottled(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * A query of the table is finished
+     *
+     * @param nanos time of the query, including writing its rows
+     * @param rows  rows returned by the query, 0 if it failed
+     */
+    public void release(String tableName, long nanos, long rows) {
+        if (this == NONE) {
+            return;
+        }
+        if (maxRowsPerSecond > 0) {
+            getShardRateLimit(tableName).consume(rows);
+        }
+        if (queryLimit != null) {
+            queryLimit.release(nanos, rows);
+        }
+    }
+
+    /**
+     * Tables are named {@code <prefix>_<shard>_<partition>}, the partitions of a shard share the limit
+     */
+    private RowRateLimit getShardRateLimit(String tableName) {
+        final int partitionIndex = tableName.lastIndexOf(SHARD_AND_PARTITION_DELIMITER);
+        final String shard = partitionIndex < 0 ? tableName : tableName.substring(0, partitionIndex);
+        return shardRateLimits.computeIfAbsent(shard, ignored -> new RowRateLimit(maxRowsPerSecond));
+    }
+}
@@ -0,0 +1,49 @@
+package com.pasha.oracleToCsvDataMigration.throttle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of one shard. The rows of a query are known only when it is finished,
+ * so they are paid for afterwards: a query starts when the shard has no debt, and its rows
+ * are taken from the allowance, which may leave a debt for the next queries to wait out.
+ * Up to a second of unused allowance is kept for a burst
+ */
+final class RowRateLimit {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long rowsPerSecond;
+    private double allowance;
+    private long lastRefillNanos = System.nanoTime();
+
+    RowRateLimit(long rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    /**
+     * Waits until the rows of the previous queries are paid off
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = getWaitNanos()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    synchronized void consume(long rows) {
+        refill();
+        allowance -= rows;
+    }
+
+    private synchronized long getWaitNanos() {
+        refill();
+        return allowance >= 0 ? 0 : (long) Math.ceil(-allowance * NANOS_PER_SECOND / rowsPerSecond);
+    }
+
+    private void refill() {
+        final long nowNanos = System.nanoTime();
+        allowance = Math.min(rowsPerSecond,
+                allowance + (double) (nowNanos - lastRefillNanos) * rowsPerSecond / NANOS_PER_SECOND);
+        lastRefillNanos = nowNanos;
+    }
+}
@@ -0,0 +1,144 @@
+package com.pasha.oracleToCsvDataMigration.checkpoint;
+
+import com.pasha.oracleToCsvDataMigration.planner.TableChunk;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointJournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private String outputDir;
+
+    @Before
+    public void setUp() {
+        outputDir = folder.getRoot().getPath() + "/";
+    }
+
+    @Test
+    public void restoresProgressAndDoneTasks() {
+        try (CheckpointJournal journal = CheckpointJournal.create(outputDir)) {
+            journal.tablePlanned(0, "A", 10);
+            journal.chunksPlanned(1, Arrays.asList(chunk("B", 0, 100), chunk("B", 100, 200)));
+            journal.progress(1, BigDecimal.valueOf(50), 1000, 40);
+            journal.taskDone(0, 300, 10);
+        }
+
+        final List<JournaledTask> tasks = CheckpointJournal.load(outputDir);
+
+        assertEquals(3, tasks.size());
+        assertFalse(tasks.get(0).isChunk());
+        assertTrue(tasks.get(0).isDone());
+        assertEquals(10, tasks.get(0).getNumberOfMigratedRows());
+        assertTask(tasks.get(1), 1, 0, 100, 50, 1000, 40);
+        assertTask(tasks.get(2), 2, 100, 200, 100, 0, 0);
+        assertFalse(tasks.get(1).isDone());
+    }
+
+    @Test
+    public void ignoresTruncatedLastRecordAndAppendsAfterIt() throws IOException {
+        try (CheckpointJournal journal = CheckpointJournal.create(outputDir)) {
+            journal.chunksPlanned(0, Collections.singletonList(chunk("A", 0, 100)));
+            journal.progress(0, BigDecimal.valueOf(30), 500, 20);
+        }
+        appendRaw("PROGRESS\t0\t6");
+
+        assertTask(CheckpointJournal.load(outputDir).get(0), 0, 0, 100, 30, 500, 20);
+
+        try (CheckpointJournal journal = CheckpointJournal.append(outputDir)) {
+            journal.progress(0, BigDecimal.valueOf(60), 900, 45);
+        }
+
+        assertTask(CheckpointJournal.load(outputDir).get(0), 0, 0, 100, 60, 900, 45);
+        final String content = new String(Files.readAllBytes(getPath()), StandardCharsets.UTF_8);
+        assertFalse(content.contains("PROGRESS\t0\t6P"));
+        assertTrue(content.endsWith("PROGRESS\t0\t60\t900\t45\n"));
+    }
+
+    @Test
+    public void replaysSplitsBeforeProgressOfBothHalves() {
+        try (CheckpointJournal journal = CheckpointJournal.create(outputDir)) {
+            journal.chunksPlanned(0, Collections.singletonList(chunk("A", 0, 100)));
+            journal.progress(0, BigDecimal.valueOf(20), 200, 10);
+            journal.chunkSplit(0, 1, chunk("A", 60, 100));
+            journal.progress(1, BigDecimal.valueOf(70), 100, 5);
+            journal.chunkSplit(1, 2, chunk("A", 85, 100));
+            journal.progress(0, BigDecimal.valueOf(40), 400, 20);
+            journal.taskDone(2, 150, 15);
+        }
+
+        final List<JournaledTask> tasks = CheckpointJournal.load(outputDir);
+
+        assertEquals(3, tasks.size());
+        assertTask(tasks.get(0), 0, 0, 60, 40, 400, 20);
+        assertTask(tasks.get(1), 1, 60, 85, 70, 100, 5);
+        assertTask(tasks.get(2), 2, 85, 100, 85, 150, 15);
+        assertTrue(tasks.get(2).isDone());
+    }
+
+    @Test
+    public void discardsChunksOfTableWhichWasNotConfirmed() throws IOException {
+        try (CheckpointJournal journal = CheckpointJournal.create(outputDir)) {
+            journal.chunksPlanned(0, Arrays.asList(chunk("A", 0, 100), chunk("A", 100, 200)));
+        }
+        // Chunks of B were written, but the run stopped before the record which confirms them
+        appendRaw("CHUNK\t2\tB\t10\t0\t100\nCHUNK\t3\tB\t10\t100\t200\n");
+
+        final List<JournaledTask> tasks = CheckpointJournal.load(outputDir);
+
+        assertEquals(2, tasks.size());
+        assertEquals("A", tasks.get(0).getTableName());
+        assertEquals("A", tasks.get(1).getTableName());
+    }
+
+    @Test
+    public void loadsNothingWithoutJournal() {
+        assertTrue(CheckpointJournal.load(outputDir).isEmpty());
+    }
+
+    private static TableChunk chunk(String tableName, long firstSubsId, long lastSubsId) {
+        return new TableChunk(tableName, BigDecimal.valueOf(firstSubsId), BigDecimal.valueOf(lastSubsId), 10);
+    }
+
+    private static void assertTask(
+            JournaledTask task,
+            int taskId,
+            long firstSubsId,
+            long lastSubsId,
+            long nextSubsId,
+            long bytesWritten,
+            long numberOfMigratedRows) {
+        assertEquals(taskId, task.getTaskId());
+        assertEquals(BigDecimal.valueOf(firstSubsId), task.getFirstSubsId());
+        assertEquals(BigDecimal.valueOf(lastSubsId), task.getLastSubsId());
+        assertEquals(BigDecimal.valueOf(nextSubsId), task.getNextSubsId());
+        assertEquals(bytesWritten, task.getBytesWritten());
+        assertEquals(numberOfMigratedRows, task.getNumberOfMigratedRows());
+    }
+
+    private void appendRaw(String records) throws IOException {
+        Files.write(getPath(), records.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private Path getPath() {
+        return Paths.get(outputDir + CheckpointJournal.FILE_NAME);
+    }
+}
@@ -0,0 +1,137 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The output of {@link CsvWriter} has to stay byte for byte the same as the one of commons-csv,
+ * which the files were written with before
+ */
+public class CsvWriterTest {
+
+    private static final CSVFormat FORMAT = CSVFormat.DEFAULT.withDelimiter('^');
+    private static final int SMALL_BUFFER_SIZE = 64;
+    private static final String[] PIECES = {
+            "a", "Z", "0", " ", "\t", "#", "^", "\"", "\r", "\n", "\r\n", ",", "-", "~", "\u007f",
+            "\u00e9", "\u0416", "\u20ac", "\ud83d\ude00", "\ud83d", "\ude00", ""};
+
+    @Test
+    public void quotesLikeCommonsCsv() throws IOException {
+        assertSameOutput(Arrays.asList(
+                Arrays.asList("plain", "1", "x y"),
+                Arrays.asList("#comment", "#"),
+                Arrays.asList(" leading", "x"),
+                Arrays.asList("x", " leading"),
+                Arrays.asList("trailing ", "trailing\t"),
+                Arrays.asList("", "second"),
+                Arrays.asList("first", ""),
+                Collections.singletonList(""),
+                Collections.singletonList(null),
+                Arrays.asList(null, null),
+                Arrays.asList("a^b", "^"),
+                Arrays.asList("cr\r", "lf\nlf", "\r\n"),
+                Arrays.asList("\"", "say \"hi\"", "\"\""),
+                Arrays.asList("!bang", "\"quoted first", ",comma", "-dash", "~tilde", "\u007fdel"),
+                Arrays.asList("\u00e9t\u00e9", "\u0416", "\u20ac", "\ud83d\ude00")));
+    }
+
+    @Test
+    public void replacesLoneSurrogates() throws IOException {
+        assertSameOutput(Arrays.asList(
+                Arrays.asList("\ud83d", "x\ude00y", "\ude00\ud83d"),
+                Arrays.asList("end\ud83d", "\ud83d\ud83d\ude00")));
+    }
+
+    @Test
+    public void encodesFieldsLargerThanBuffer() throws IOException {
+        final StringBuilder ascii = new StringBuilder();
+        final StringBuilder quoted = new StringBuilder("\"");
+        final StringBuilder surrogates = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            ascii.append((char) ('a' + i % 26));
+            quoted.append(i % 7 == 0 ? "\"^" : "\u20ac");
+            // Surrogate pairs are split at every possible offset of a piece
+            surrogates.append(i % 3 == 0 ? "x" : "").append("\ud83d\ude00");
+        }
+        assertSameOutput(Arrays.asList(
+                Arrays.asList(ascii.toString(), quoted.toString()),
+                Arrays.asList(surrogates.toString(), surrogates.substring(1), surrogates + "\ud83d")));
+    }
+
+    @Test
+    public void matchesRandomRecords() throws IOException {
+        final Random random = new Random(42);
+        final List<List<String>> records = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            final List<String> record = new ArrayList<>();
+            final int countFields = 1 + random.nextInt(4);
+            for (int j = 0; j < countFields; ++j) {
+                if (random.nextInt(10) == 0) {
+                    record.add(null);
+                    continue;
+                }
+                final StringBuilder field = new StringBuilder();
+                final int countPieces = random.nextInt(random.nextInt(10) == 0 ? 40 : 5);
+                for (int k = 0; k < countPieces; ++k) {
+                    field.append(PIECES[random.nextInt(PIECES.length)]);
+                }
+                record.add(field.toString());
+            }
+            records.add(record);
+        }
+        assertSameOutput(records);
+    }
+
+    private static void assertSameOutput(List<List<String>> records) throws IOException {
+        final StringWriter expected = new StringWriter();
+        try (CSVPrinter printer = new CSVPrinter(expected, FORMAT)) {
+            for (List<String> record : records) {
+                // Absent values were printed as empty strings
+                for (String field : record) {
+                    printer.print(field == null ? "" : field);
+                }
+                printer.println();
+            }
+        }
+        final byte[] expectedBytes = expected.toString().getBytes(StandardCharsets.UTF_8);
+        for (int bufferSize : new int[]{CsvWriter.DEFAULT_BUFFER_SIZE, SMALL_BUFFER_SIZE}) {
+            final byte[] actualBytes = write(records, bufferSize);
+            // Strings first for a readable diff
+            assertEquals(new String(expectedBytes, StandardCharsets.UTF_8),
+                    new String(actualBytes, StandardCharsets.UTF_8));
+            assertArrayEquals(expectedBytes, actualBytes);
+        }
+    }
+
+    private static byte[] write(List<List<String>> records, int bufferSize) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (CsvWriter csvWriter = new CsvWriter(Channels.newChannel(output), bufferSize)) {
+            for (List<String> record : records) {
+                for (String field : record) {
+                    if (field == null) {
+                        csvWriter.writeEmptyField();
+                    } else {
+                        csvWriter.writeField(field);
+                    }
+                }
+                csvWriter.endRecord();
+            }
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,170 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import com.pasha.oracleToCsvDataMigration.checkpoint.CheckpointJournal;
+import com.pasha.oracleToCsvDataMigration.checkpoint.JournaledTask;
+import com.pasha.oracleToCsvDataMigration.incremental.DeltaExport;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import com.pasha.oracleToCsvDataMigration.planner.TableChunk;
+import com.pasha.oracleToCsvDataMigration.throttle.QueryThrottle;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A task which is interrupted and resumed from the journal has to write the same file as a task which is not
+ */
+public class DiscountMigrationTaskResumeTest {
+
+    private static final String TABLE_NAME = "DISCOUNTS_001_001";
+    private static final int ROW_COUNT = 10000;
+    private static final TableChunk CHUNK = new TableChunk(
+            TABLE_NAME, BigDecimal.ONE, BigDecimal.valueOf(ROW_COUNT + 1), ROW_COUNT);
+
+    private static SingleConnectionDataSource dataSource;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void createTable() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:resume;MODE=Oracle", true);
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE_NAME + " (SUBS_SUBS_ID NUMBER(12), NAME VARCHAR2(40))");
+        jdbcTemplate.execute("INSERT INTO " + TABLE_NAME +
+                " SELECT X, CASEWHEN(MOD(X, 7) = 0, 'say \"' || X || '\"', 'name ' || X) FROM SYSTEM_RANGE(1, " +
+                ROW_COUNT + ")");
+    }
+
+    @AfterClass
+    public static void dropTable() {
+        dataSource.destroy();
+    }
+
+    @Test
+    public void continuesFileFromLastCheckpoint() throws IOException {
+        final String completeDir = newOutputDir("complete");
+        final MigrationParams completeParams = newParams(completeDir);
+        try (CheckpointJournal journal = CheckpointJournal.create(completeDir)) {
+            journal.chunksPlanned(0, Collections.singletonList(CHUNK));
+            final DiscountMigrationTaskResult result =
+                    newTask(new JdbcTemplate(dataSource), completeParams, journal).call();
+            assertEquals(ROW_COUNT, result.getNumberOfMigratedRows());
+        }
+
+        final String resumedDir = newOutputDir("resumed");
+        final MigrationParams resumedParams = newParams(resumedDir);
+        try (CheckpointJournal journal = CheckpointJournal.create(resumedDir)) {
+            journal.chunksPlanned(0, Collections.singletonList(CHUNK));
+            newTask(new FailingJdbcTemplate(5), resumedParams, journal).call();
+            fail("The task has to fail on its 6th query");
+        } catch (DataAccessResourceFailureException expected) {
+            // The run is interrupted after 5 slices
+        }
+        // Bytes written after the last checkpoint are discarded on resume
+        final Path inProgressPath = Paths.get(resumedDir + "DISCOUNTS_" + TABLE_NAME + "_0" +
+                OutputFile.IN_PROGRESS_SUFFIX);
+        Files.write(inProgressPath, "12345^partial row".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        final List<JournaledTask> journaledTasks = CheckpointJournal.load(resumedDir);
+        assertEquals(1, journaledTasks.size());
+        final JournaledTask journaledTask = journaledTasks.get(0);
+        assertFalse(journaledTask.isDone());
+        assertTrue(journaledTask.getNextSubsId().compareTo(CHUNK.getFirstSubsId()) > 0);
+        assertTrue(journaledTask.getBytesWritten() > 0);
+        final long resumedRowCount;
+        try (CheckpointJournal journal = CheckpointJournal.append(resumedDir)) {
+            resumedRowCount = DiscountMigrationTask.resume(journaledTask, new JdbcTemplate(dataSource), resumedParams,
+                    journal, new MigrationMetrics(), DeltaExport.FULL, TableProjection.ALL, QueryThrottle.NONE)
+                    .call()
+                    .getNumberOfMigratedRows();
+        }
+
+        assertEquals(ROW_COUNT, resumedRowCount);
+        assertFalse(Files.exists(inProgressPath));
+        assertArrayEquals(
+                Files.readAllBytes(Paths.get(completeDir + "DISCOUNTS_" + TABLE_NAME + "_0")),
+                Files.readAllBytes(Paths.get(resumedDir + "DISCOUNTS_" + TABLE_NAME + "_0")));
+        final Properties completeManifest = loadManifest(completeDir);
+        final Properties resumedManifest = loadManifest(resumedDir);
+        assertEquals(completeManifest.getProperty("crc32"), resumedManifest.getProperty("crc32"));
+        assertEquals(String.valueOf(ROW_COUNT), resumedManifest.getProperty("rows"));
+        assertTrue(CheckpointJournal.load(resumedDir).get(0).isDone());
+    }
+
+    private String newOutputDir(String name) throws IOException {
+        return folder.newFolder(name).getPath() + "/";
+    }
+
+    private static MigrationParams newParams(String outputDir) {
+        return MigrationParams.builder()
+                .tableNamePrefix("DISCOUNTS")
+                .shards("1..1")
+                .partitions("1..1")
+                .outputDir(outputDir)
+                .fetchSize(100)
+                .build();
+    }
+
+    private static DiscountMigrationTask newTask(
+            JdbcTemplate jdbcTemplate,
+            MigrationParams params,
+            CheckpointJournal journal) {
+        return new DiscountMigrationTask(CHUNK, 0, jdbcTemplate, params, journal, new MigrationMetrics(),
+                DeltaExport.FULL, TableProjection.ALL, null, QueryThrottle.NONE);
+    }
+
+    private static Properties loadManifest(String outputDir) throws IOException {
+        final Properties manifest = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(
+                outputDir + "DISCOUNTS_" + TABLE_NAME + "_0" + OutputFile.MANIFEST_SUFFIX))) {
+            manifest.load(reader);
+        }
+        return manifest;
+    }
+
+    /**
+     * Fails the queries after the first {@code countQueries}, as a lost connection would
+     */
+    private static final class FailingJdbcTemplate extends JdbcTemplate {
+        private int countQueries;
+
+        private FailingJdbcTemplate(int countQueries) {
+            super(dataSource);
+            this.countQueries = countQueries;
+        }
+
+        @Override
+        public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) {
+            if (countQueries-- == 0) {
+                throw new DataAccessResourceFailureException("Connection is lost");
+            }
+            return super.query(psc, pss, rse);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.pasha.oracleToCsvDataMigration.executor;
+
+import com.pasha.oracleToCsvDataMigration.checkpoint.CheckpointJournal;
+import com.pasha.oracleToCsvDataMigration.incremental.DeltaExport;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import com.pasha.oracleToCsvDataMigration.planner.TableChunk;
+import com.pasha.oracleToCsvDataMigration.throttle.QueryThrottle;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Keyset pages export every row once, also when rows share a SUBS_SUBS_ID and when the task is split
+ * while a page is read
+ */
+public class KeysetPagingTest {
+
+    private static final String TABLE_NAME = "DISCOUNTS_001_001";
+    private static final int ROW_COUNT = 3000;
+    /**
+     * Rows of 3 per SUBS_SUBS_ID, and one SUBS_SUBS_ID of 53 rows
+     */
+    private static final int MAX_SUBS_ID = ROW_COUNT / 3 * 2;
+    private static final TableChunk CHUNK = new TableChunk(
+            TABLE_NAME, BigDecimal.ZERO, BigDecimal.valueOf(MAX_SUBS_ID + 1), ROW_COUNT);
+
+    private static SingleConnectionDataSource dataSource;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void createTable() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:paging;MODE=Oracle", true);
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE_NAME + " (ROW_ID NUMBER(12), SUBS_SUBS_ID NUMBER(12))");
+        jdbcTemplate.execute("INSERT INTO " + TABLE_NAME + " SELECT X, " +
+                "CASEWHEN(X BETWEEN 1000 AND 1049, 666, X / 3 * 2) FROM SYSTEM_RANGE(1, " + ROW_COUNT + ")");
+    }
+
+    @AfterClass
+    public static void dropTable() {
+        dataSource.destroy();
+    }
+
+    @Test
+    public void keepsRowsOfOneSubsIdInOnePage() throws IOException {
+        final String outputDir = folder.getRoot().getPath() + "/";
+        final CountingJdbcTemplate jdbcTemplate = new CountingJdbcTemplate();
+        final long countMigratedRows;
+        try (CheckpointJournal journal = CheckpointJournal.create(outputDir)) {
+            journal.chunksPlanned(0, Collections.singletonList(CHUNK));
+            countMigratedRows = newTask(jdbcTemplate, newParams(outputDir, 7), journal).call()
+                    .getNumberOfMigratedRows();
+        }
+
+        assertEquals(ROW_COUNT, countMigratedRows);
+        assertEquals(ROW_COUNT, countRows(new int[ROW_COUNT + 1], outputDir, 0));
+        // Pages of 2 groups of 3 rows, as the 3rd group is cut by the limit of 8 rows,
+        // and 2 more queries for the group of 53 rows
+        assertTrue("Queries: " + jdbcTemplate.countQueries,
+                jdbcTemplate.countQueries > ROW_COUNT / 6 - 10 && jdbcTemplate.countQueries <= ROW_COUNT / 6 + 2);
+        assertTrue("Rows read by a page: " + jdbcTemplate.maxRowsRead, jdbcTemplate.maxRowsRead <= 8);
+    }
+
+    @Test
+    public void stopsPageAtRangeGivenAwayBySplit() throws IOException {
+        final String outputDir = folder.getRoot().getPath() + "/";
+        final SplittingJdbcTemplate jdbcTemplate = new SplittingJdbcTemplate();
+        final MigrationParams params = newParams(outputDir, ROW_COUNT);
+        try (CheckpointJournal journal = CheckpointJournal.create(outputDir)) {
+            journal.chunksPlanned(0, Collections.singletonList(CHUNK));
+            jdbcTemplate.task = newTask(jdbcTemplate, params, journal);
+            final long countMigratedRows = jdbcTemplate.task.call().getNumberOfMigratedRows();
+            assertNotNull("The task has to be split", jdbcTemplate.stolenTask);
+            final long countStolenRows = jdbcTemplate.stolenTask.call().getNumberOfMigratedRows();
+            assertEquals(ROW_COUNT, countMigratedRows + countStolenRows);
+            assertTrue(countStolenRows > 0);
+        }
+
+        final int[] exported = new int[ROW_COUNT + 1];
+        countRows(exported, outputDir, 0);
+        countRows(exported, outputDir, 1);
+        for (int rowId = 1; rowId <= ROW_COUNT; ++rowId) {
+            assertEquals("Row " + rowId, 1, exported[rowId]);
+        }
+    }
+
+    private static MigrationParams newParams(String outputDir, int pageSize) {
+        return MigrationParams.builder()
+                .tableNamePrefix("DISCOUNTS")
+                .shards("1..1")
+                .partitions("1..1")
+                .outputDir(outputDir)
+                .fetchSize(10)
+                .pageSize(pageSize)
+                .build();
+    }
+
+    private static DiscountMigrationTask newTask(
+            JdbcTemplate jdbcTemplate,
+            MigrationParams params,
+            CheckpointJournal journal) {
+        return new DiscountMigrationTask(CHUNK, 0, jdbcTemplate, params, journal, new MigrationMetrics(),
+                DeltaExport.FULL, TableProjection.ALL, null, QueryThrottle.NONE);
+    }
+
+    /**
+     * Counts the exported rows of the file of a task by ROW_ID, every row has to be exported once
+     *
+     * @return number of rows in the file
+     */
+    private static int countRows(int[] exported, String outputDir, int taskId) throws IOException {
+        final List<String> lines = Files.readAllLines(
+                Paths.get(outputDir + "DISCOUNTS_" + TABLE_NAME + "_" + taskId), StandardCharsets.UTF_8);
+        for (String line : lines.subList(1, lines.size())) {
+            final int rowId = Integer.parseInt(line.substring(0, line.indexOf('^')));
+            assertEquals("Row " + rowId + " is exported twice", 1, ++exported[rowId]);
+        }
+        return lines.size() - 1;
+    }
+
+    /**
+     * Counts the queries and the rows each ordered query returns
+     */
+    private static class CountingJdbcTemplate extends JdbcTemplate {
+        int countQueries;
+        int maxRowsRead;
+
+        private CountingJdbcTemplate() {
+            super(dataSource);
+        }
+
+        @Override
+        public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) {
+            ++countQueries;
+            return super.query(psc, pss, resultSet -> {
+                final T result = rse.extractData(resultSet);
+                if (resultSet.getType() != ResultSet.TYPE_FORWARD_ONLY && resultSet.last()) {
+                    maxRowsRead = Math.max(maxRowsRead, resultSet.getRow());
+                }
+                return result;
+            });
+        }
+    }
+
+    /**
+     * Splits the task when its first page is read, the split point is inside the page
+     */
+    private static final class SplittingJdbcTemplate extends CountingJdbcTemplate {
+        private DiscountMigrationTask task;
+        private DiscountMigrationTask stolenTask;
+
+        @Override
+        public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) {
+            return super.query(psc, pss, resultSet -> {
+                if (stolenTask == null) {
+                    stolenTask = (DiscountMigrationTask) task.trySplit(1);
+                }
+                return rse.extractData(resultSet);
+            });
+        }
+    }
+}
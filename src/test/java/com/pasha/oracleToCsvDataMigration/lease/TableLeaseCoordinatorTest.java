@@ -0,0 +1,222 @@
+package com.pasha.oracleToCsvDataMigration.lease;
+
+import com.pasha.oracleToCsvDataMigration.executor.OutputFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Workers of one run share the output directory, here they are coordinators of the same temporary folder
+ */
+public class TableLeaseCoordinatorTest {
+
+    /**
+     * Leases don't expire by themselves during a test, they are aged by hand
+     */
+    private static final int LEASE_SECONDS = 3600;
+    private static final long EXPIRED_MILLIS = TimeUnit.SECONDS.toMillis(2 * LEASE_SECONDS);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private String outputDir;
+    private ExecutorService executor;
+    private final List<TableLeaseCoordinator> coordinators = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        outputDir = folder.getRoot().getPath() + "/";
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        coordinators.forEach(TableLeaseCoordinator::close);
+    }
+
+    @Test
+    public void leasesEveryTableToOneWorker() throws Exception {
+        final List<TableLeaseCoordinator> workers = Arrays.asList(open("a"), open("b"), open("c"));
+        final List<String> tableNames = new ArrayList<>();
+        for (int i = 1; i <= 30; ++i) {
+            tableNames.add(String.format("DISCOUNTS_001_%03d", i));
+        }
+
+        final List<List<String>> leases = runTogether(workers, worker -> {
+            final List<String> leasedTableNames = new ArrayList<>();
+            List<String> claimed;
+            while (!(claimed = worker.claim(tableNames, 1)).isEmpty()) {
+                leasedTableNames.addAll(claimed);
+            }
+            return leasedTableNames;
+        });
+
+        final Set<String> leasedTableNames = new HashSet<>();
+        for (int i = 0; i < workers.size(); ++i) {
+            for (String tableName : leases.get(i)) {
+                assertTrue(tableName + " is leased twice", leasedTableNames.add(tableName));
+                assertFalse(workers.get(i).isFinished(tableNames));
+                writeFile(workers.get(i), tableName, 10);
+                assertTrue(workers.get(i).complete(tableName));
+            }
+        }
+        assertEquals(new HashSet<>(tableNames), leasedTableNames);
+        assertTrue(workers.get(0).isFinished(tableNames));
+        // A done table is not leased again
+        assertTrue(workers.get(1).claim(tableNames, tableNames.size()).isEmpty());
+
+        workers.get(2).writeRunManifest(tableNames);
+        final List<String> records = Files.readAllLines(
+                Paths.get(outputDir + TableLeaseCoordinator.RUN_MANIFEST_FILE_NAME), StandardCharsets.UTF_8);
+        assertEquals(tableNames.size(), records.size());
+        for (String record : records) {
+            assertEquals(5, record.split("\t").length);
+        }
+    }
+
+    @Test
+    public void takesOverExpiredLeaseOnce() throws Exception {
+        final TableLeaseCoordinator dead = open("dead");
+        final List<TableLeaseCoordinator> workers = Arrays.asList(open("a"), open("b"), open("c"));
+        for (int i = 1; i <= 20; ++i) {
+            final String tableName = String.format("DISCOUNTS_001_%03d", i);
+            assertEquals(Collections.singletonList(tableName), dead.claim(Collections.singletonList(tableName), 1));
+            // Nobody takes a lease which is renewed
+            assertTrue(workers.get(0).claim(Collections.singletonList(tableName), 1).isEmpty());
+            age(tableName);
+
+            final List<List<String>> leases = runTogether(workers,
+                    worker -> worker.claim(Collections.singletonList(tableName), 1));
+
+            int countTakeovers = 0;
+            for (List<String> leasedTableNames : leases) {
+                countTakeovers += leasedTableNames.size();
+            }
+            assertEquals("Table " + tableName + " is taken over by " + leases, 1, countTakeovers);
+            assertEquals(1, countFiles(tableName + ".lease"));
+            assertEquals(0, countFiles(tableName + ".expired."));
+        }
+    }
+
+    @Test
+    public void takesFirstWorkerToFinishTable() throws Exception {
+        final String tableName = "DISCOUNTS_001_001";
+        final List<String> tableNames = Collections.singletonList(tableName);
+        for (int attempt = 0; attempt < 20; ++attempt) {
+            final TableLeaseCoordinator slow = open("slow" + attempt);
+            final TableLeaseCoordinator fast = open("fast" + attempt);
+            assertEquals(tableNames, slow.claim(tableNames, 1));
+            age(tableName);
+            assertEquals(tableNames, fast.claim(tableNames, 1));
+            writeFile(slow, tableName, 7);
+            writeFile(fast, tableName, 8);
+
+            final List<Boolean> completed = runTogether(Arrays.asList(slow, fast),
+                    worker -> worker.complete(tableName));
+
+            assertNotEquals("Exactly one worker has to finish the table", completed.get(0), completed.get(1));
+            final TableLeaseCoordinator winner = completed.get(0) ? slow : fast;
+            final List<String> records = Files.readAllLines(
+                    Paths.get(outputDir, "leases", tableName + ".done"), StandardCharsets.UTF_8);
+            assertEquals(1, records.size());
+            assertTrue(records.get(0), records.get(0).startsWith(
+                    tableName + "\t" + winner.getWorkerId() + "/DISCOUNTS_" + tableName + "_0\t"));
+            assertTrue(slow.isFinished(tableNames));
+            assertEquals(0, countFiles(".tmp"));
+            assertEquals(0, countFiles(tableName + ".lease"));
+
+            Files.delete(Paths.get(outputDir, "leases", tableName + ".done"));
+        }
+    }
+
+    private TableLeaseCoordinator open(String workerId) {
+        final TableLeaseCoordinator coordinator = TableLeaseCoordinator.open(outputDir, workerId, LEASE_SECONDS);
+        coordinators.add(coordinator);
+        return coordinator;
+    }
+
+    /**
+     * Makes the lease of the table look like the one of a dead worker
+     */
+    private void age(String tableName) throws IOException {
+        Files.setLastModifiedTime(Paths.get(outputDir, "leases", tableName + ".lease"),
+                FileTime.fromMillis(System.currentTimeMillis() - EXPIRED_MILLIS));
+    }
+
+    private long countFiles(String namePart) throws IOException {
+        try (Stream<Path> paths = Files.list(Paths.get(outputDir, "leases"))) {
+            return paths.filter(path -> path.getFileName().toString().contains(namePart)).count();
+        }
+    }
+
+    /**
+     * Writes a committed file of the table with its manifest, as a task does
+     */
+    private static void writeFile(TableLeaseCoordinator worker, String tableName, long rows) throws IOException {
+        final String fileName = "DISCOUNTS_" + tableName + "_0";
+        Files.write(Paths.get(worker.getWorkerOutputDir() + fileName), new byte[]{1});
+        final Properties manifest = new Properties();
+        manifest.setProperty("file", fileName);
+        manifest.setProperty("rows", Long.toString(rows));
+        manifest.setProperty("bytes", "1");
+        manifest.setProperty("crc32", "0");
+        try (Writer writer = Files.newBufferedWriter(
+                Paths.get(worker.getWorkerOutputDir() + fileName + OutputFile.MANIFEST_SUFFIX))) {
+            manifest.store(writer, null);
+        }
+    }
+
+    /**
+     * Runs the action of every worker at the same time
+     */
+    private <T> List<T> runTogether(List<TableLeaseCoordinator> workers, WorkerAction<T> action) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<T>> futures = new ArrayList<>();
+        for (TableLeaseCoordinator worker : workers) {
+            futures.add(executor.submit((Callable<T>) () -> {
+                start.await();
+                return action.apply(worker);
+            }));
+        }
+        start.countDown();
+        final List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get(1, TimeUnit.MINUTES));
+        }
+        return results;
+    }
+
+    private interface WorkerAction<T> {
+        T apply(TableLeaseCoordinator worker) throws Exception;
+    }
+}
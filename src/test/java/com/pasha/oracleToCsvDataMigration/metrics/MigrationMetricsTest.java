@@ -0,0 +1,30 @@
+package com.pasha.oracleToCsvDataMigration.metrics;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+public class MigrationMetricsTest {
+
+    @Test
+    public void exposesMetricsOfLastStartedRun() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(MigrationMetrics.OBJECT_NAME);
+
+        final MigrationMetrics first = new MigrationMetrics();
+        final MigrationMetrics second = new MigrationMetrics();
+        first.start(3);
+        assertEquals(3, server.getAttribute(name, "NumThreads"));
+
+        second.start(5);
+        assertEquals(5, server.getAttribute(name, "NumThreads"));
+
+        // The metrics of the last run stay available after it is finished
+        second.finish();
+        assertEquals(5, server.getAttribute(name, "NumThreads"));
+    }
+}
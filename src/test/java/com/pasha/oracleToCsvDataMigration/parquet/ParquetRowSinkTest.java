@@ -0,0 +1,280 @@
+package com.pasha.oracleToCsvDataMigration.parquet;
+
+import com.pasha.oracleToCsvDataMigration.checkpoint.CheckpointJournal;
+import com.pasha.oracleToCsvDataMigration.executor.DiscountMigrationTask;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import com.pasha.oracleToCsvDataMigration.executor.OutputCompression;
+import com.pasha.oracleToCsvDataMigration.executor.OutputFormat;
+import com.pasha.oracleToCsvDataMigration.executor.TableProjection;
+import com.pasha.oracleToCsvDataMigration.incremental.DeltaExport;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import com.pasha.oracleToCsvDataMigration.planner.TableChunk;
+import com.pasha.oracleToCsvDataMigration.throttle.QueryThrottle;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Files written by {@link ParquetRowSink} are read back with parquet-hadoop
+ */
+public class ParquetRowSinkTest {
+
+    private static final String TABLE_NAME = "DISCOUNTS_001_001";
+    private static final int ROW_COUNT = 5000;
+    private static final String QUERY = "SELECT * FROM " + TABLE_NAME + " WHERE SUBS_SUBS_ID >= ? AND SUBS_SUBS_ID < ?";
+    /**
+     * Row groups of a few hundred rows
+     */
+    private static final int SMALL_ROW_GROUP_SIZE = 1 << 12;
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void createTable() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:parquet;MODE=Oracle", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE_NAME + " (SUBS_SUBS_ID NUMBER(12), AMOUNT NUMBER(10, 2), " +
+                "RATIO NUMBER, BALANCE NUMBER(24, 4), CREATED DATE, UPDATED TIMESTAMP, NAME VARCHAR2(40))");
+        jdbcTemplate.execute("INSERT INTO " + TABLE_NAME + " SELECT X, " +
+                "CASEWHEN(MOD(X, 3) = 0, NULL, X * 1.25 - 1000), " +
+                "CASEWHEN(MOD(X, 4) = 0, NULL, X / 8.0), " +
+                "X * 1000000000000000 + 0.0001, " +
+                "CASEWHEN(MOD(X, 5) = 0, NULL, DATEADD('SECOND', X, TIMESTAMP '2024-01-01 00:00:00')), " +
+                "CASEWHEN(MOD(X, 6) = 0, NULL, DATEADD('MILLISECOND', X * 1001, TIMESTAMP '2024-01-01 00:00:00')), " +
+                "CASEWHEN(MOD(X, 7) = 0, NULL, 'name \u00e9\u20ac ' || MOD(X, 10)) " +
+                "FROM SYSTEM_RANGE(1, " + ROW_COUNT + ")");
+    }
+
+    @AfterClass
+    public static void dropTable() {
+        dataSource.destroy();
+    }
+
+    @Test
+    public void readsUncompressedFile() throws IOException {
+        assertRoundTrip(OutputCompression.NONE, CompressionCodecName.UNCOMPRESSED);
+    }
+
+    @Test
+    public void readsGzipFile() throws IOException {
+        assertRoundTrip(OutputCompression.GZIP, CompressionCodecName.GZIP);
+    }
+
+    @Test
+    public void readsZstdFile() throws IOException {
+        assertRoundTrip(OutputCompression.ZSTD, CompressionCodecName.ZSTD);
+    }
+
+    @Test
+    public void takesSchemaOfEmptyRangeFromQuery() throws IOException {
+        final String outputDir = folder.getRoot().getPath() + "/";
+        final MigrationParams params = MigrationParams.builder()
+                .tableNamePrefix("DISCOUNTS")
+                .shards("1..1")
+                .partitions("1..1")
+                .outputDir(outputDir)
+                .outputFormat(OutputFormat.PARQUET)
+                .build();
+        final TableChunk emptyChunk = new TableChunk(
+                TABLE_NAME, BigDecimal.valueOf(ROW_COUNT + 1), BigDecimal.valueOf(ROW_COUNT + 1), 0);
+        try (CheckpointJournal journal = CheckpointJournal.create(outputDir)) {
+            journal.chunksPlanned(0, Collections.singletonList(emptyChunk));
+            new DiscountMigrationTask(emptyChunk, 0, jdbcTemplate, params, journal, new MigrationMetrics(),
+                    DeltaExport.FULL, TableProjection.ALL, null, QueryThrottle.NONE).call();
+        }
+
+        final String path = outputDir + "DISCOUNTS_" + TABLE_NAME + "_0" + ParquetRowSink.FILE_EXTENSION;
+        final ParquetMetadata footer = readFooter(path);
+        assertEquals(7, footer.getFileMetaData().getSchema().getFieldCount());
+        assertTrue(footer.getBlocks().isEmpty());
+        assertEquals(0, readRows(path));
+    }
+
+    @Test
+    public void refusesNumberWhichDoesNotFitDecimal() throws IOException {
+        final String path = folder.newFolder().getPath() + "/table" + ParquetRowSink.FILE_EXTENSION;
+        try (ParquetRowSink rowSink = new ParquetRowSink(path, OutputCompression.NONE, new MigrationMetrics())) {
+            rowSink.export(jdbcTemplate, "SELECT RATIO / 7 RATIO FROM " + TABLE_NAME + " WHERE SUBS_SUBS_ID = ?", 1);
+            fail("1/56 has more digits than DECIMAL(38, 10) and must not be rounded");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("RATIO"));
+        }
+    }
+
+    @Test
+    public void refusesToCommitFileWithoutSchema() throws IOException {
+        final String path = folder.newFile().getPath() + ParquetRowSink.FILE_EXTENSION;
+        final ParquetRowSink rowSink = new ParquetRowSink(path, OutputCompression.NONE, new MigrationMetrics());
+        try {
+            rowSink.commit(0);
+            fail("A file without a schema must not be committed");
+        } catch (IllegalStateException expected) {
+            // The file stays under its temporary name
+        }
+        assertFalse(Files.exists(Paths.get(path)));
+    }
+
+    private void assertRoundTrip(OutputCompression compression, CompressionCodecName codec) throws IOException {
+        final String path = folder.newFolder().getPath() + "/table" + ParquetRowSink.FILE_EXTENSION;
+        try (ParquetRowSink rowSink = new ParquetRowSink(
+                path, compression, new MigrationMetrics(), SMALL_ROW_GROUP_SIZE)) {
+            // Two slices of a chunk go to one file
+            final int middle = ROW_COUNT / 2 + 1;
+            assertEquals(middle - 1, rowSink.export(jdbcTemplate, QUERY, 1, middle));
+            assertEquals(ROW_COUNT - middle + 1, rowSink.export(jdbcTemplate, QUERY, middle, ROW_COUNT + 1));
+            rowSink.commit(ROW_COUNT);
+        }
+
+        final ParquetMetadata footer = readFooter(path);
+        assertTrue("Expected several row groups", footer.getBlocks().size() > 2);
+        long footerRows = 0;
+        for (BlockMetaData block : footer.getBlocks()) {
+            footerRows += block.getRowCount();
+            for (ColumnChunkMetaData column : block.getColumns()) {
+                assertEquals(codec, column.getCodec());
+                assertFalse(column.getPath() + " has no statistics", column.getStatistics().isEmpty());
+            }
+            // Names repeat, so they are dictionary encoded
+            assertTrue(block.getColumns().get(6).hasDictionaryPage());
+        }
+        assertEquals(ROW_COUNT, footerRows);
+
+        final MessageType schema = footer.getFileMetaData().getSchema();
+        assertPrimitive(schema, "SUBS_SUBS_ID", PrimitiveType.PrimitiveTypeName.INT64, null);
+        assertPrimitive(schema, "AMOUNT", PrimitiveType.PrimitiveTypeName.INT64,
+                LogicalTypeAnnotation.decimalType(2, 10));
+        // NUMBER without precision is decimal too, not DOUBLE
+        assertPrimitive(schema, "RATIO", PrimitiveType.PrimitiveTypeName.BINARY,
+                LogicalTypeAnnotation.decimalType(10, 38));
+        assertPrimitive(schema, "BALANCE", PrimitiveType.PrimitiveTypeName.BINARY,
+                LogicalTypeAnnotation.decimalType(4, 24));
+        assertPrimitive(schema, "CREATED", PrimitiveType.PrimitiveTypeName.INT64,
+                LogicalTypeAnnotation.timestampType(false, LogicalTypeAnnotation.TimeUnit.MILLIS));
+        assertPrimitive(schema, "UPDATED", PrimitiveType.PrimitiveTypeName.INT64,
+                LogicalTypeAnnotation.timestampType(false, LogicalTypeAnnotation.TimeUnit.MILLIS));
+        assertPrimitive(schema, "NAME", PrimitiveType.PrimitiveTypeName.BINARY,
+                LogicalTypeAnnotation.stringType());
+
+        long expectedId = 1;
+        try (ParquetReader<Group> reader = ParquetReader
+                .builder(new GroupReadSupport(), new org.apache.hadoop.fs.Path(path))
+                .withConf(new Configuration())
+                .build()) {
+            Group row;
+            while ((row = reader.read()) != null) {
+                assertRow(row, expectedId++);
+            }
+        }
+        assertEquals(ROW_COUNT + 1, expectedId);
+    }
+
+    private static void assertRow(Group row, long id) {
+        assertEquals(id, row.getLong("SUBS_SUBS_ID", 0));
+        if (id % 3 == 0) {
+            assertNull(row, "AMOUNT");
+        } else {
+            assertEquals(BigDecimal.valueOf(id).multiply(new BigDecimal("1.25")).subtract(BigDecimal.valueOf(1000)),
+                    BigDecimal.valueOf(row.getLong("AMOUNT", 0), 2));
+        }
+        if (id % 4 == 0) {
+            assertNull(row, "RATIO");
+        } else {
+            assertEquals(0, BigDecimal.valueOf(id).divide(BigDecimal.valueOf(8)).compareTo(getDecimal(row, "RATIO", 10)));
+        }
+        assertEquals(BigDecimal.valueOf(id).scaleByPowerOfTen(15).add(new BigDecimal("0.0001")),
+                getDecimal(row, "BALANCE", 4));
+        if (id % 5 == 0) {
+            assertNull(row, "CREATED");
+        } else {
+            assertEquals(toMillis(EPOCH.plusSeconds(id)), row.getLong("CREATED", 0));
+        }
+        if (id % 6 == 0) {
+            assertNull(row, "UPDATED");
+        } else {
+            assertEquals(toMillis(EPOCH.plusNanos(id * 1001 * 1000000)), row.getLong("UPDATED", 0));
+        }
+        if (id % 7 == 0) {
+            assertNull(row, "NAME");
+        } else {
+            assertEquals("name \u00e9\u20ac " + id % 10, row.getString("NAME", 0));
+        }
+    }
+
+    private static BigDecimal getDecimal(Group row, String field, int scale) {
+        return new BigDecimal(new BigInteger(row.getBinary(field, 0).getBytes()), scale);
+    }
+
+    private static void assertNull(Group row, String field) {
+        assertEquals(field + " has to be null", 0, row.getFieldRepetitionCount(field));
+    }
+
+    private static void assertPrimitive(
+            MessageType schema,
+            String field,
+            PrimitiveType.PrimitiveTypeName typeName,
+            LogicalTypeAnnotation logicalType) {
+        final PrimitiveType type = schema.getType(field).asPrimitiveType();
+        assertEquals(typeName, type.getPrimitiveTypeName());
+        assertEquals(logicalType, type.getLogicalTypeAnnotation());
+    }
+
+    private static long toMillis(LocalDateTime localDateTime) {
+        return localDateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static ParquetMetadata readFooter(String path) throws IOException {
+        try (ParquetFileReader reader = ParquetFileReader.open(
+                HadoopInputFile.fromPath(new org.apache.hadoop.fs.Path(path), new Configuration()))) {
+            return reader.getFooter();
+        }
+    }
+
+    private static long readRows(String path) throws IOException {
+        long countRows = 0;
+        try (ParquetReader<Group> reader = ParquetReader
+                .builder(new GroupReadSupport(), new org.apache.hadoop.fs.Path(path))
+                .withConf(new Configuration())
+                .build()) {
+            while (reader.read() != null) {
+                ++countRows;
+            }
+        }
+        return countRows;
+    }
+}
@@ -0,0 +1,153 @@
+package com.pasha.oracleToCsvDataMigration.stream;
+
+import com.pasha.oracleToCsvDataMigration.executor.IRowCursor;
+import com.pasha.oracleToCsvDataMigration.executor.IRowSink;
+import com.pasha.oracleToCsvDataMigration.executor.MigrationParams;
+import com.pasha.oracleToCsvDataMigration.metrics.MigrationMetrics;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Queries of a task share the csv buffer of its sink, every query is still a document of its own
+ */
+public class StreamRowSinkTest {
+
+    private static final String TABLE_NAME = "DISCOUNTS_001_001";
+    private static final String QUERY = "SELECT * FROM " + TABLE_NAME
+            + " WHERE SUBS_SUBS_ID >= ? AND SUBS_SUBS_ID < ? ORDER BY SUBS_SUBS_ID";
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void createTable() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:stream;MODE=Oracle", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE_NAME + " (SUBS_SUBS_ID NUMBER(12), NAME VARCHAR2(40))");
+        jdbcTemplate.execute("INSERT INTO " + TABLE_NAME + " SELECT X, 'name ' || X FROM SYSTEM_RANGE(1, 10)");
+    }
+
+    @AfterClass
+    public static void dropTable() {
+        dataSource.destroy();
+    }
+
+    @Test
+    public void abortsFailedQueryAndStartsNextOneWithHeader() throws IOException {
+        final File streamFile = folder.newFile();
+        final MigrationParams params = MigrationParams.builder()
+                .tableNamePrefix("DISCOUNTS")
+                .shards("1..1")
+                .partitions("1..1")
+                .outputDir(folder.getRoot().getPath() + "/")
+                .streamTo(streamFile.getPath())
+                .build();
+        try (StreamOutput output = StreamOutput.open(params, new MigrationMetrics())) {
+            final IRowSink rowSink = output.openRowSink(TABLE_NAME);
+            assertEquals(3, rowSink.export(jdbcTemplate, QUERY, 1, 4));
+            try {
+                rowSink.export(jdbcTemplate, QUERY, new FailingRowCursor(2), 4, 8);
+                fail("The query has to fail on its 3rd row");
+            } catch (DataAccessException expected) {
+                // The query is aborted
+            }
+            assertEquals(3, rowSink.export(jdbcTemplate, QUERY, 8, 11));
+            output.commit();
+        }
+
+        final List<Frame> frames = readFrames(Files.readAllBytes(streamFile.toPath()));
+        assertEquals(9, frames.size());
+        assertFrame(frames.get(0), StreamOutput.BEGIN, 1, TABLE_NAME + "\t1\t4");
+        assertFrame(frames.get(1), StreamOutput.DATA, 1,
+                "SUBS_SUBS_ID^NAME\r\n1^name 1\r\n2^name 2\r\n3^name 3\r\n");
+        assertFrame(frames.get(2), StreamOutput.END, 1, "3");
+        assertFrame(frames.get(3), StreamOutput.BEGIN, 2, TABLE_NAME + "\t4\t8");
+        assertFrame(frames.get(4), StreamOutput.ABORT, 2, "");
+        assertFrame(frames.get(5), StreamOutput.BEGIN, 3, TABLE_NAME + "\t8\t11");
+        assertFrame(frames.get(6), StreamOutput.DATA, 3,
+                "SUBS_SUBS_ID^NAME\r\n8^name 8\r\n9^name 9\r\n10^name 10\r\n");
+        assertFrame(frames.get(7), StreamOutput.END, 3, "3");
+        assertFrame(frames.get(8), StreamOutput.RUN_END, 0, "3");
+    }
+
+    private static void assertFrame(Frame frame, byte type, int queryId, String payload) {
+        assertEquals((char) type, (char) frame.type);
+        assertEquals(queryId, frame.queryId);
+        assertEquals(payload, frame.payload);
+    }
+
+    private static List<Frame> readFrames(byte[] stream) {
+        final ByteBuffer buffer = ByteBuffer.wrap(stream);
+        final List<Frame> frames = new ArrayList<>();
+        Frame data = null;
+        while (buffer.hasRemaining()) {
+            final byte type = buffer.get();
+            final int queryId = buffer.getInt();
+            final byte[] payload = new byte[buffer.getInt()];
+            buffer.get(payload);
+            final String text = new String(payload, StandardCharsets.UTF_8);
+            // Data frames of a query are joined, their boundaries depend on the buffer size
+            if (type == StreamOutput.DATA && data != null && data.queryId == queryId) {
+                data.payload += text;
+                continue;
+            }
+            final Frame frame = new Frame(type, queryId, text);
+            data = type == StreamOutput.DATA ? frame : null;
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static final class Frame {
+        private final byte type;
+        private final int queryId;
+        private String payload;
+
+        private Frame(byte type, int queryId, String payload) {
+            this.type = type;
+            this.queryId = queryId;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Fails after {@code countRows} rows, as a lost connection would in the middle of a query
+     */
+    private static final class FailingRowCursor implements IRowCursor {
+        private int countRows;
+
+        private FailingRowCursor(int countRows) {
+            this.countRows = countRows;
+        }
+
+        @Override
+        public boolean next(ResultSet resultSet) throws SQLException {
+            if (countRows-- == 0) {
+                throw new SQLException("Connection is lost");
+            }
+            return resultSet.next();
+        }
+    }
+}